@@ -0,0 +1,78 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.benchmarks;
+
+import io.michaelrocks.paranoid.DeobfuscatorHelper;
+import io.michaelrocks.paranoid.StringPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BufferBenchmark {
+  @Param({ "8", "64", "512" })
+  public int length;
+
+  private long id;
+  private String[] chunks;
+  private StringPool pool;
+  private char[] buffer;
+
+  @Setup
+  public void setup() {
+    final StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; ++i) {
+      builder.append((char) (' ' + i % 95));
+    }
+
+    final StringPoolBuilder poolBuilder = new StringPoolBuilder(42);
+    id = poolBuilder.registerString(builder.toString());
+    chunks = poolBuilder.getChunks();
+    pool = StringPool.create(0, 42, chunks, null, null, null);
+    buffer = new char[length];
+  }
+
+  @Benchmark
+  public String getString() {
+    return DeobfuscatorHelper.getString(id, chunks);
+  }
+
+  @Benchmark
+  public int getChars() {
+    return pool.getChars(id, buffer, 0);
+  }
+
+  @Benchmark
+  public int length() {
+    return pool.length(id);
+  }
+}
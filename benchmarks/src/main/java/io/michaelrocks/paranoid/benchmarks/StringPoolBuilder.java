@@ -0,0 +1,61 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid.benchmarks;
+
+import io.michaelrocks.paranoid.DeobfuscatorHelper;
+import io.michaelrocks.paranoid.RandomHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Mirrors the way the processor encodes strings, so benchmarks can decode a pool without running the processor.
+class StringPoolBuilder {
+  private final long seed;
+  private final StringBuilder builder = new StringBuilder();
+
+  StringPoolBuilder(final int seed) {
+    this.seed = seed & 0xffffffffL;
+  }
+
+  long registerString(final String string) {
+    long state = RandomHelper.seed(seed);
+    state = RandomHelper.next(state);
+    long mask = state & 0xffff00000000L;
+    state = RandomHelper.next(state);
+    mask |= (state & 0xffff00000000L) << 16;
+    final int index = builder.length();
+    final long id = seed | (((index & 0xffffffffL) << 32) ^ mask);
+
+    state = RandomHelper.next(state);
+    builder.append((char) (((state >>> 32) & 0xffff) ^ string.length()));
+    for (int i = 0; i < string.length(); ++i) {
+      state = RandomHelper.next(state);
+      builder.append((char) (((state >>> 32) & 0xffff) ^ string.charAt(i)));
+    }
+
+    return id;
+  }
+
+  String[] getChunks() {
+    final List<String> chunks = new ArrayList<String>();
+    for (int i = 0; i < builder.length(); i += DeobfuscatorHelper.MAX_CHUNK_LENGTH) {
+      chunks.add(builder.substring(i, Math.min(builder.length(), i + DeobfuscatorHelper.MAX_CHUNK_LENGTH)));
+    }
+    return chunks.toArray(new String[0]);
+  }
+}
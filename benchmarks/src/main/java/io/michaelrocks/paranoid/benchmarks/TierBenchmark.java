@@ -0,0 +1,120 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.benchmarks;
+
+import io.michaelrocks.paranoid.DeobfuscatorHelper;
+import io.michaelrocks.paranoid.FastStringDecoder;
+import io.michaelrocks.paranoid.StrongStringDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TierBenchmark {
+  private static final int SEED = 42;
+
+  @Param({ "8", "64", "512" })
+  public int length;
+
+  private long fastId;
+  private String[] fastChunks;
+  private FastStringDecoder fastDecoder;
+  private long defaultId;
+  private String[] defaultChunks;
+  private long strongId;
+  private String[] strongChunks;
+  private StrongStringDecoder strongDecoder;
+
+  @Setup
+  public void setup() throws Exception {
+    final StringBuilder builder = new StringBuilder(length);
+    for (int i = 0; i < length; ++i) {
+      builder.append((char) (' ' + i % 95));
+    }
+    final String string = builder.toString();
+
+    // Pools are encoded the way the processor's codecs encode them.
+    final StringBuilder fastPool = new StringBuilder();
+    fastPool.append((char) (string.length() ^ FastStringDecoder.getCharKey(SEED, 0)));
+    for (int i = 0; i < string.length(); ++i) {
+      fastPool.append((char) (string.charAt(i) ^ FastStringDecoder.getCharKey(SEED, i + 1)));
+    }
+    fastId = SEED;
+    fastChunks = new String[] { fastPool.toString() };
+    fastDecoder = new FastStringDecoder();
+
+    final StringPoolBuilder defaultPool = new StringPoolBuilder(SEED);
+    defaultId = defaultPool.registerString(string);
+    defaultChunks = defaultPool.getChunks();
+
+    final byte[] key = new byte[16];
+    final StringBuilder keyString = new StringBuilder();
+    for (int i = 0; i < key.length; ++i) {
+      key[i] = (byte) (SEED * i);
+      keyString.append((char) (key[i] & 0xff));
+    }
+    final byte[] bytes = new byte[string.length() * 2];
+    for (int i = 0; i < string.length(); ++i) {
+      bytes[i * 2] = (byte) (string.charAt(i) >>> 8);
+      bytes[i * 2 + 1] = (byte) string.charAt(i);
+    }
+    final Cipher cipher = Cipher.getInstance(StrongStringDecoder.TRANSFORMATION);
+    cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"),
+        new IvParameterSpec(StrongStringDecoder.getCounterBlock(0)));
+    final byte[] encrypted = cipher.doFinal(bytes);
+    final StringBuilder strongPool = new StringBuilder();
+    for (final byte value : encrypted) {
+      strongPool.append((char) (value & 0xff));
+    }
+    strongId = string.length();
+    strongChunks = new String[] { strongPool.toString() };
+    strongDecoder = new StrongStringDecoder(keyString.toString());
+  }
+
+  @Benchmark
+  public String decodeFast() {
+    return fastDecoder.decode(fastId, fastChunks, null);
+  }
+
+  @Benchmark
+  public String decodeDefault() {
+    return DeobfuscatorHelper.getString(defaultId, defaultChunks);
+  }
+
+  @Benchmark
+  public String decodeStrong() {
+    return strongDecoder.decode(strongId, strongChunks, null);
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class ArrayStringCache implements StringCache {
+  private final AtomicReferenceArray<String> strings;
+
+  // Ids must be indices of strings, which is true for the indexed id format only.
+  public ArrayStringCache(final int capacity) {
+    strings = new AtomicReferenceArray<String>(capacity);
+  }
+
+  @Override
+  public String get(final long id) {
+    return strings.get((int) id);
+  }
+
+  @Override
+  public String put(final long id, final String string) {
+    if (strings.compareAndSet((int) id, null, string)) {
+      return string;
+    }
+
+    return strings.get((int) id);
+  }
+}
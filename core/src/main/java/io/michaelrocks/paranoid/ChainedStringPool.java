@@ -0,0 +1,40 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid;
+
+// Every char of a string is encrypted with the next value of a keystream, so chars are decoded in order.
+final class ChainedStringPool extends CursorStringPool {
+  ChainedStringPool(final int seed, final String[] chunks, final ChunkLoader loader, final String[] offsets,
+      final StringCache cache) {
+    super(seed, chunks, loader, offsets, false, cache);
+  }
+
+  @Override
+  void openAt(final StringCursor cursor, final int position) {
+    // Every string starts the same keystream, so strings stored one after another can be decoded in a row.
+    cursor.state = DeobfuscatorHelper.getCharAt(position, chunks, loader, initialState);
+    cursor.position = position + 1;
+    cursor.length = (int) ((cursor.state >>> 32) & 0xffffL);
+  }
+
+  @Override
+  char next(final StringCursor cursor) {
+    cursor.state = DeobfuscatorHelper.getCharAt(cursor.position++, chunks, loader, cursor.state);
+    return (char) (cursor.state >>> 32);
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid;
+
+// Every char is encrypted with a keystream computed from its position in the pool, so chars can be decoded at any
+// position. A cursor keeps the keystream word of its position, which encrypts several chars.
+final class CounterStringPool extends CursorStringPool {
+  private final long key;
+
+  CounterStringPool(final int seed, final String[] chunks, final ChunkLoader loader, final String[] offsets,
+      final StringCache cache) {
+    super(seed, chunks, loader, offsets, false, cache);
+    this.key = seed & 0xffffffffL;
+  }
+
+  @Override
+  void openAt(final StringCursor cursor, final int position) {
+    seek(cursor, position);
+    cursor.length = next(cursor);
+  }
+
+  @Override
+  char next(final StringCursor cursor) {
+    final int position = cursor.position++;
+    final String chunk = getChunk(position / DeobfuscatorHelper.MAX_CHUNK_LENGTH);
+    final int shift = (position % DeobfuscatorHelper.COUNTER_WORD_CHAR_COUNT) * 16;
+    final char unit = (char) (chunk.charAt(position % DeobfuscatorHelper.MAX_CHUNK_LENGTH) ^ (cursor.state >>> shift));
+    if (cursor.position % DeobfuscatorHelper.COUNTER_WORD_CHAR_COUNT == 0) {
+      cursor.state = getWord(cursor.position);
+    }
+    return unit;
+  }
+
+  @Override
+  void skip(final StringCursor cursor, final int count) {
+    seek(cursor, cursor.position + count);
+  }
+
+  private void seek(final StringCursor cursor, final int position) {
+    cursor.position = position;
+    cursor.state = getWord(position);
+  }
+
+  private long getWord(final int position) {
+    return RandomHelper.counter(key, position / DeobfuscatorHelper.COUNTER_WORD_CHAR_COUNT);
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid;
+
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A pool whose strings are decoded char by char with a cursor, so a string can be compared, copied or read without
+ * decoding it as a whole.
+ * <p>
+ * Every string starts with its length, and strings that are registered together are stored one after another, unless
+ * a subclass locates strings differently.
+ */
+abstract class CursorStringPool extends StringPool {
+  private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+  final int seed;
+  final String[] chunks;
+  final ChunkLoader loader;
+  private final String[] offsets;
+  private final String[] blocks;
+  private final int indexMask;
+  final long initialState;
+
+  CursorStringPool(final int seed, final String[] chunks, final ChunkLoader loader, final String[] offsets,
+      final boolean deflated, final StringCache cache) {
+    super(cache);
+    this.seed = seed;
+    this.chunks = chunks;
+    this.loader = loader;
+    this.offsets = offsets;
+    // Every chunk of a deflated pool holds a compressed block, which is inflated into this array on first access.
+    this.blocks = deflated ? new String[chunks.length] : null;
+
+    // A masked id holds the seed, so the mask of positions and the state every string starts with are the same for
+    // every id of the pool and are computed only once.
+    long state = RandomHelper.seed(seed & 0xffffffffL);
+    state = RandomHelper.next(state);
+    final long low = (state >>> 32) & 0xffff;
+    state = RandomHelper.next(state);
+    final long high = (state >>> 16) & 0xffff0000;
+    this.indexMask = (int) (low ^ high);
+    this.initialState = state;
+  }
+
+  // Positions a cursor at the length of a string that is stored at a position of the pool.
+  abstract void openAt(StringCursor cursor, int position);
+
+  // Decodes the char a cursor is at and moves the cursor to the next char.
+  abstract char next(StringCursor cursor);
+
+  // Positions a cursor at the first char of a string and stores the length of the string in the cursor.
+  void open(final StringCursor cursor, final long id) {
+    openAt(cursor, offsets == null ? (int) (id >>> 32) ^ indexMask : getOffset((int) id));
+  }
+
+  void skip(final StringCursor cursor, final int count) {
+    for (int i = 0; i < count; ++i) {
+      next(cursor);
+    }
+  }
+
+  @Override
+  String decode(final long id) {
+    final StringCursor cursor = new StringCursor();
+    open(cursor, id);
+    return decode(cursor);
+  }
+
+  @Override
+  public String[] getStrings(final long id, final int count) {
+    final StringCursor cursor = new StringCursor();
+    open(cursor, id);
+    final String[] strings = new String[count];
+    for (int i = 0; i < count; ++i) {
+      if (i > 0) {
+        openAt(cursor, cursor.position);
+      }
+      strings[i] = decode(cursor);
+    }
+    return strings;
+  }
+
+  // The length is the first char of a string, so strings of different lengths are told apart by a single char.
+  @Override
+  public boolean equals(final long id, final CharSequence string) {
+    if (string == null) {
+      return false;
+    }
+
+    final StringCursor cursor = new StringCursor();
+    open(cursor, id);
+    if (cursor.length != string.length()) {
+      return false;
+    }
+
+    for (int i = 0; i < cursor.length; ++i) {
+      if (next(cursor) != string.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public StringBuilder appendTo(final long id, final StringBuilder builder) {
+    final StringCursor cursor = new StringCursor();
+    open(cursor, id);
+    builder.ensureCapacity(builder.length() + cursor.length);
+    for (int i = 0; i < cursor.length; ++i) {
+      builder.append(next(cursor));
+    }
+    return builder;
+  }
+
+  @Override
+  public int length(final long id) {
+    final StringCursor cursor = new StringCursor();
+    open(cursor, id);
+    return cursor.length;
+  }
+
+  @Override
+  public int getChars(final long id, final char[] dest, final int offset) {
+    final StringCursor cursor = new StringCursor();
+    open(cursor, id);
+    checkBounds(dest, offset, cursor.length);
+    for (int i = 0; i < cursor.length; ++i) {
+      dest[offset + i] = next(cursor);
+    }
+    return cursor.length;
+  }
+
+  @Override
+  public Reader getReader(final long id) {
+    return new DecodingReader(this, id);
+  }
+
+  final String getChunk(final int chunkIndex) {
+    return DeobfuscatorHelper.getChunk(chunkIndex, chunks, loader);
+  }
+
+  final String getBlock(final int blockIndex) {
+    final String block = blocks[blockIndex];
+    if (block != null) {
+      return block;
+    }
+
+    // Like chunks, inflated blocks are kept as strings, so they can be shared between threads without locking.
+    final String inflatedBlock = inflateBlock(blockIndex, getChunk(blockIndex));
+    blocks[blockIndex] = inflatedBlock;
+    return inflatedBlock;
+  }
+
+  final boolean isDeflated() {
+    return blocks != null;
+  }
+
+  private String decode(final StringCursor cursor) {
+    final char[] chars = new char[cursor.length];
+    for (int i = 0; i < chars.length; ++i) {
+      chars[i] = next(cursor);
+    }
+    return new String(chars);
+  }
+
+  private int getOffset(final int index) {
+    final int charIndex = index * 2;
+    final int high = offsets[charIndex / DeobfuscatorHelper.MAX_CHUNK_LENGTH]
+        .charAt(charIndex % DeobfuscatorHelper.MAX_CHUNK_LENGTH);
+    final int low = offsets[(charIndex + 1) / DeobfuscatorHelper.MAX_CHUNK_LENGTH]
+        .charAt((charIndex + 1) % DeobfuscatorHelper.MAX_CHUNK_LENGTH);
+    return ((high << 16) | low) ^ DeobfuscatorHelper.getOffsetKey(seed, index);
+  }
+
+  private String inflateBlock(final int blockIndex, final String chunk) {
+    // Every char of the chunk holds 7 bits of the encrypted block.
+    final byte[] bytes = new byte[chunk.length() * 7 / 8];
+    long state = RandomHelper.seed((seed & 0xffffffffL) ^ ((long) blockIndex << 32));
+    int buffer = 0;
+    int bitCount = 0;
+    int charIndex = 0;
+    for (int i = 0; i < bytes.length; ++i) {
+      while (bitCount < 8) {
+        buffer = (buffer << 7) | chunk.charAt(charIndex++);
+        bitCount += 7;
+      }
+      bitCount -= 8;
+      state = RandomHelper.next(state);
+      bytes[i] = (byte) ((buffer >>> bitCount) ^ (state >>> 32));
+      buffer &= (1 << bitCount) - 1;
+    }
+
+    final Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(bytes);
+      final byte[] units = new byte[DeobfuscatorHelper.DEFLATE_BLOCK_LENGTH];
+      int length = 0;
+      while (length < units.length && !inflater.finished()) {
+        final int inflatedLength = inflater.inflate(units, length, units.length - length);
+        if (inflatedLength == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        length += inflatedLength;
+      }
+      return new String(units, 0, length, LATIN1);
+    } catch (final DataFormatException exception) {
+      throw new IllegalStateException("Cannot inflate block " + blockIndex, exception);
+    } finally {
+      inflater.end();
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid;
+
+// Strings of an obfuscation tier that can only be decoded as a whole by the decoder of the tier.
+final class DecoderStringPool extends StringPool {
+  private final StringDecoder decoder;
+  private final String[] chunks;
+  private final ChunkLoader loader;
+
+  DecoderStringPool(final StringDecoder decoder, final String[] chunks, final ChunkLoader loader,
+      final StringCache cache) {
+    super(cache);
+    this.decoder = decoder;
+    this.chunks = chunks;
+    this.loader = loader;
+  }
+
+  @Override
+  String decode(final long id) {
+    return decoder.decode(id, chunks, loader);
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A reader of a string stored in a pool that works like {@link java.io.StringReader} but decodes chars as they're read.
+ * <p>
+ * The reader decodes chars with a cursor of the pool, so skipping backwards or resetting to a mark opens the string
+ * again and skips to the position, which is cheap only for pools that can decode chars at any position. Like any
+ * reader, the reader is guarded by its lock.
+ */
+class DecodingReader extends Reader {
+  private final CursorStringPool pool;
+  private final long id;
+  private final StringCursor cursor = new StringCursor();
+  private final int length;
+
+  private boolean closed;
+  private int position;
+  private int mark;
+
+  DecodingReader(final CursorStringPool pool, final long id) {
+    this.pool = pool;
+    this.id = id;
+    pool.open(cursor, id);
+    this.length = cursor.length;
+  }
+
+  @Override
+  public int read() throws IOException {
+    synchronized (lock) {
+      ensureOpen();
+      return position < length ? decodeNextChar() : -1;
+    }
+  }
+
+  @Override
+  public int read(final char[] buffer, final int offset, final int count) throws IOException {
+    synchronized (lock) {
+      ensureOpen();
+      if (offset < 0 || count < 0 || offset + count > buffer.length || offset + count < 0) {
+        throw new IndexOutOfBoundsException();
+      }
+      if (count == 0) {
+        return 0;
+      }
+      if (position >= length) {
+        return -1;
+      }
+
+      final int readCount = Math.min(length - position, count);
+      for (int i = 0; i < readCount; ++i) {
+        buffer[offset + i] = decodeNextChar();
+      }
+      return readCount;
+    }
+  }
+
+  @Override
+  public long skip(final long count) throws IOException {
+    synchronized (lock) {
+      ensureOpen();
+      if (position >= length) {
+        return 0;
+      }
+
+      // Like StringReader, a negative count skips backwards.
+      final long skipCount = Math.max(-position, Math.min(length - position, count));
+      seek(position + (int) skipCount);
+      return skipCount;
+    }
+  }
+
+  @Override
+  public boolean ready() throws IOException {
+    synchronized (lock) {
+      ensureOpen();
+      return true;
+    }
+  }
+
+  @Override
+  public boolean markSupported() {
+    return true;
+  }
+
+  @Override
+  public void mark(final int readAheadLimit) throws IOException {
+    if (readAheadLimit < 0) {
+      throw new IllegalArgumentException("Read-ahead limit < 0");
+    }
+
+    synchronized (lock) {
+      ensureOpen();
+      mark = position;
+    }
+  }
+
+  @Override
+  public void reset() throws IOException {
+    synchronized (lock) {
+      ensureOpen();
+      seek(mark);
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (lock) {
+      closed = true;
+    }
+  }
+
+  private void ensureOpen() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  private char decodeNextChar() {
+    ++position;
+    return pool.next(cursor);
+  }
+
+  private void seek(final int newPosition) {
+    if (newPosition < position) {
+      pool.open(cursor, id);
+      position = 0;
+    }
+    pool.skip(cursor, newPosition - position);
+    position = newPosition;
+  }
+}
@@ -19,32 +19,103 @@ package io.michaelrocks.paranoid;
 public class DeobfuscatorHelper {
   public static final int MAX_CHUNK_LENGTH = 0x1fff;
 
+  public static final int SEVEN_BIT_UNIT_MASK = 0x7f;
+  public static final int SEVEN_BIT_ESCAPE = 0x7f;
+  public static final int SEVEN_BIT_ESCAPED_UNIT_COUNT = 3;
+
+  public static final int DEFLATE_BLOCK_LENGTH = 0x1000;
+
+  // In counter mode a single keystream word encrypts this many chars of the pool.
+  public static final int COUNTER_WORD_CHAR_COUNT = 4;
+
+  // Tables of ids that are generated into a deobfuscator store a long in this many chars.
+  public static final int TABLE_ENTRY_CHAR_COUNT = 4;
+
+  // A masked id holds the seed and the encrypted position of a string in the pool. An indexed id is a position of
+  // the string in an offset table, which holds encrypted positions of all strings two chars per string.
+  public static final int ID_FORMAT_MASKED = 1;
+  public static final int ID_FORMAT_INDEXED = 2;
+
   private DeobfuscatorHelper() {
     // Cannot be instantiated.
   }
 
   public static String getString(final long id, final String[] chunks) {
+    return getString(id, chunks, null);
+  }
+
+  public static String getString(final long id, final String[] chunks, final ChunkLoader loader) {
     long state = RandomHelper.seed(id & 0xffffffffL);
     state = RandomHelper.next(state);
     final long low = (state >>> 32) & 0xffff;
     state = RandomHelper.next(state);
     final long high = (state >>> 16) & 0xffff0000;
     final int index = (int) ((id >>> 32) ^ low ^ high);
-    state = getCharAt(index, chunks, state);
+    return decodeStringAt(index, chunks, loader, state);
+  }
+
+  public static int getCounterCharKey(final long key, final int charIndex) {
+    final long word = RandomHelper.counter(key, charIndex / COUNTER_WORD_CHAR_COUNT);
+    return (int) (word >>> ((charIndex % COUNTER_WORD_CHAR_COUNT) * 16)) & 0xffff;
+  }
+
+  // A table of longs is stored in string constants, so a table of any size doesn't take much code to load.
+  public static long getTableEntry(final String[] table, final int index) {
+    long entry = 0;
+    for (int i = 0; i < TABLE_ENTRY_CHAR_COUNT; ++i) {
+      final int charIndex = index * TABLE_ENTRY_CHAR_COUNT + i;
+      entry = (entry << 16) | table[charIndex / MAX_CHUNK_LENGTH].charAt(charIndex % MAX_CHUNK_LENGTH);
+    }
+    return entry;
+  }
+
+  public static int getOffsetKey(final int seed, final int index) {
+    return (int) RandomHelper.seed(~(seed & 0xffffffffL) ^ ((long) index << 32));
+  }
+
+  public static long getPackedIdMask(final int seed) {
+    long state = RandomHelper.seed(seed & 0xffffffffL);
+    long mask = 0;
+    for (int i = 0; i < 4; ++i) {
+      state = RandomHelper.next(state);
+      mask = (mask << 16) | ((state >>> 32) & 0xffff);
+    }
+    return mask;
+  }
+
+  public static int getPackedUnitKey(final int seed, final int unitIndex) {
+    return (int) RandomHelper.seed((seed & 0xffffffffL) ^ ((long) unitIndex << 32));
+  }
+
+  private static String decodeStringAt(final int index, final String[] chunks, final ChunkLoader loader,
+      final long initialState) {
+    long state = getCharAt(index, chunks, loader, initialState);
     final int length = (int) ((state >>> 32) & 0xffffL);
     final char[] chars = new char[length];
-
     for (int i = 0; i < length; ++i) {
-      state = getCharAt(index + i + 1, chunks, state);
+      state = getCharAt(index + i + 1, chunks, loader, state);
       chars[i] = (char) ((state >>> 32) & 0xffffL);
     }
 
     return new String(chars);
   }
 
-  private static long getCharAt(final int charIndex, final String[] chunks, final long state) {
+  static long getCharAt(final int charIndex, final String[] chunks, final ChunkLoader loader,
+      final long state) {
     final long nextState = RandomHelper.next(state);
-    final String chunk = chunks[charIndex / MAX_CHUNK_LENGTH];
+    final String chunk = getChunk(charIndex / MAX_CHUNK_LENGTH, chunks, loader);
     return nextState ^ ((long) chunk.charAt(charIndex % MAX_CHUNK_LENGTH) << 32);
   }
+
+  static String getChunk(final int chunkIndex, final String[] chunks, final ChunkLoader loader) {
+    final String chunk = chunks[chunkIndex];
+    if (chunk != null || loader == null) {
+      return chunk;
+    }
+
+    // Strings are immutable, so a racing thread either sees the loaded chunk or loads the same chunk again.
+    final String loadedChunk = loader.loadChunk(chunkIndex);
+    chunks[chunkIndex] = loadedChunk;
+    return loadedChunk;
+  }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Decodes strings of classes listed in the {@code warmUpClasses} option of the plugin in advance.
+ * <p>
+ * Calls to these methods are replaced with calls to a generated class, so the methods do nothing if strings aren't
+ * obfuscated. A string that is requested while it's being warmed up is either taken from the cache or decoded by the
+ * requesting thread too, so warm-up never blocks other threads. Decoded strings are kept in the string cache, so the
+ * {@code warmUpClasses} option requires the {@code stringCache} option.
+ */
+public final class DeobfuscatorWarmUp {
+  private DeobfuscatorWarmUp() {
+    // Cannot be instantiated.
+  }
+
+  /**
+   * Decodes the strings on the calling thread.
+   */
+  public static void warmUp() {
+  }
+
+  /**
+   * Decodes the strings with an executor, for example on a background thread.
+   */
+  public static void prefetch(final Executor executor) {
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid;
+
+public class FastStringDecoder implements StringDecoder {
+  @Override
+  public String decode(final long id, final String[] chunks, final ChunkLoader loader) {
+    // An id holds the position of a string in the pool and a key the chars of the pool are XORed with.
+    final int index = (int) (id >>> 32);
+    final int key = (int) id;
+    final int length = getCharAt(index, key, chunks, loader);
+    final char[] chars = new char[length];
+    for (int i = 0; i < length; ++i) {
+      chars[i] = getCharAt(index + i + 1, key, chunks, loader);
+    }
+    return new String(chars);
+  }
+
+  public static char getCharKey(final int key, final int charIndex) {
+    return (char) (key >>> ((charIndex & 1) << 4));
+  }
+
+  private static char getCharAt(final int charIndex, final int key, final String[] chunks, final ChunkLoader loader) {
+    final int chunkIndex = charIndex / DeobfuscatorHelper.MAX_CHUNK_LENGTH;
+    String chunk = chunks[chunkIndex];
+    if (chunk == null) {
+      chunk = loader.loadChunk(chunkIndex);
+      chunks[chunkIndex] = chunk;
+    }
+    return (char) (chunk.charAt(charIndex % DeobfuscatorHelper.MAX_CHUNK_LENGTH) ^ getCharKey(key, charIndex));
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded cache that approximates LRU eviction with the CLOCK algorithm.
+ * <p>
+ * Lookups never take a lock: they probe an open-addressing table and mark the entry they find as referenced. Insertions
+ * are serialized and evict the first entry the clock hand finds unreferenced within a single turn. Evicted entries
+ * leave tombstones in the table until there are enough of them to rebuild it.
+ */
+public class LruStringCache implements StringCache {
+  private static final Entry REMOVED = new Entry(0L, null);
+
+  private final Entry[] clock;
+  private final int mask;
+
+  private volatile AtomicReferenceArray<Entry> entries;
+  private int size;
+  private int hand;
+  private int removedCount;
+
+  public LruStringCache(final int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+
+    clock = new Entry[capacity];
+    final int tableSize = StringCacheHelper.getTableSize(capacity);
+    entries = new AtomicReferenceArray<Entry>(tableSize);
+    mask = tableSize - 1;
+  }
+
+  @Override
+  public String get(final long id) {
+    final AtomicReferenceArray<Entry> entries = this.entries;
+    int index = StringCacheHelper.hash(id) & mask;
+    for (int i = 0; i <= mask; ++i) {
+      final Entry entry = entries.get(index);
+      if (entry == null) {
+        return null;
+      }
+
+      if (entry != REMOVED && entry.id == id) {
+        if (!entry.referenced) {
+          entry.referenced = true;
+        }
+        return entry.string;
+      }
+
+      index = (index + 1) & mask;
+    }
+
+    return null;
+  }
+
+  @Override
+  public synchronized String put(final long id, final String string) {
+    final String cachedString = get(id);
+    if (cachedString != null) {
+      return cachedString;
+    }
+
+    final Entry entry = new Entry(id, string);
+    if (size < clock.length) {
+      clock[size++] = entry;
+    } else {
+      // Readers can mark entries again while the hand moves, so after a full turn the entry under the hand is evicted
+      // even if it has been referenced.
+      for (int i = 0; i < clock.length && clock[hand].referenced; ++i) {
+        clock[hand].referenced = false;
+        hand = (hand + 1) % clock.length;
+      }
+
+      remove(clock[hand]);
+      clock[hand] = entry;
+      hand = (hand + 1) % clock.length;
+    }
+
+    insert(entry);
+    return string;
+  }
+
+  private void remove(final Entry entry) {
+    final AtomicReferenceArray<Entry> entries = this.entries;
+    int index = StringCacheHelper.hash(entry.id) & mask;
+    while (entries.get(index) != entry) {
+      index = (index + 1) & mask;
+    }
+
+    entries.set(index, REMOVED);
+    removedCount += 1;
+  }
+
+  private void insert(final Entry entry) {
+    // Live entries never take more than a half of the table, so allowing tombstones to take another quarter
+    // guarantees that lookups still end at an empty slot.
+    if (removedCount > (mask + 1) / 4) {
+      final AtomicReferenceArray<Entry> newEntries = new AtomicReferenceArray<Entry>(mask + 1);
+      for (int i = 0; i < size; ++i) {
+        if (clock[i] != entry) {
+          insert(newEntries, clock[i]);
+        }
+      }
+
+      insert(newEntries, entry);
+      entries = newEntries;
+      removedCount = 0;
+    } else if (insert(entries, entry) == REMOVED) {
+      removedCount -= 1;
+    }
+  }
+
+  private Entry insert(final AtomicReferenceArray<Entry> entries, final Entry entry) {
+    int index = StringCacheHelper.hash(entry.id) & mask;
+    while (true) {
+      final Entry oldEntry = entries.get(index);
+      if (oldEntry == null || oldEntry == REMOVED) {
+        entries.set(index, entry);
+        return oldEntry;
+      }
+
+      index = (index + 1) & mask;
+    }
+  }
+
+  private static final class Entry {
+    final long id;
+    final String string;
+    // Written by readers without synchronization. A lost update only makes eviction less precise.
+    boolean referenced;
+
+    Entry(final long id, final String string) {
+      this.id = id;
+      this.string = string;
+    }
+  }
+}
@@ -26,4 +26,14 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.CLASS)
 @Documented
 public @interface Obfuscate {
+  Tier tier() default Tier.DEFAULT;
+
+  enum Tier {
+    // Strings are hidden from tools like strings and grep but can be decoded almost for free.
+    FAST,
+    // Strings are encoded the way the plugin is configured.
+    DEFAULT,
+    // Strings are encrypted with AES, which costs more but doesn't leak the keystream through known strings.
+    STRONG
+  }
 }
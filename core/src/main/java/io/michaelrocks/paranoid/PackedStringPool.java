@@ -0,0 +1,76 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid;
+
+// A packed id holds the position and the length of a string, so strings can share units of the pool. Every unit is
+// encrypted with a key of its own position, so decoding can start anywhere in the pool.
+final class PackedStringPool extends CursorStringPool {
+  private final boolean sevenBit;
+  private final long idMask;
+
+  PackedStringPool(final int format, final int seed, final String[] chunks, final ChunkLoader loader,
+      final StringCache cache) {
+    super(seed, chunks, loader, null, (format & FORMAT_DEFLATE) != 0, cache);
+    this.sevenBit = (format & (FORMAT_SEVEN_BIT | FORMAT_DEFLATE)) != 0;
+    this.idMask = DeobfuscatorHelper.getPackedIdMask(seed);
+  }
+
+  @Override
+  void open(final StringCursor cursor, final long id) {
+    final long unmaskedId = id ^ idMask;
+    cursor.position = (int) unmaskedId;
+    cursor.length = (int) (unmaskedId >>> 32);
+  }
+
+  @Override
+  void openAt(final StringCursor cursor, final int position) {
+    throw new UnsupportedOperationException("Packed strings don't have lengths stored in the pool");
+  }
+
+  @Override
+  char next(final StringCursor cursor) {
+    int unit = nextUnit(cursor);
+    if (sevenBit) {
+      unit &= DeobfuscatorHelper.SEVEN_BIT_UNIT_MASK;
+      if (unit == DeobfuscatorHelper.SEVEN_BIT_ESCAPE) {
+        unit = 0;
+        for (int i = 0; i < DeobfuscatorHelper.SEVEN_BIT_ESCAPED_UNIT_COUNT; ++i) {
+          unit = (unit << 7) | (nextUnit(cursor) & DeobfuscatorHelper.SEVEN_BIT_UNIT_MASK);
+        }
+      }
+    }
+    return (char) unit;
+  }
+
+  @Override
+  public String[] getStrings(final long id, final int count) {
+    throw new UnsupportedOperationException("Packed strings cannot be decoded together");
+  }
+
+  private int nextUnit(final StringCursor cursor) {
+    final int position = cursor.position++;
+    if (isDeflated()) {
+      return getBlock(position / DeobfuscatorHelper.DEFLATE_BLOCK_LENGTH)
+          .charAt(position % DeobfuscatorHelper.DEFLATE_BLOCK_LENGTH);
+    }
+
+    final String chunk = getChunk(position / DeobfuscatorHelper.MAX_CHUNK_LENGTH);
+    return (chunk.charAt(position % DeobfuscatorHelper.MAX_CHUNK_LENGTH)
+        ^ DeobfuscatorHelper.getPackedUnitKey(seed, position)) & 0xffff;
+  }
+}
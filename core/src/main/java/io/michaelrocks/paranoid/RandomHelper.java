@@ -26,6 +26,15 @@ public class RandomHelper {
     return ((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32;
   }
 
+  // Returns 64 bits of a keystream that depend only on the key and the counter, so any part of the keystream can be
+  // computed without computing the parts before it.
+  public static long counter(final long key, final long counter) {
+    long z = key + counter * 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+
   public static long next(final long state) {
     short s0 = (short) (state & 0xffff);
     short s1 = (short) ((state >>> 16) & 0xffff);
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid;
+
+// ASCII chars take a single 7-bit unit and other chars take an escape unit followed by three units. Units of a
+// deflated pool are compressed in blocks, which aren't encrypted unit by unit.
+final class SevenBitStringPool extends CursorStringPool {
+  SevenBitStringPool(final int format, final int seed, final String[] chunks, final ChunkLoader loader,
+      final String[] offsets, final StringCache cache) {
+    super(seed, chunks, loader, offsets, (format & FORMAT_DEFLATE) != 0, cache);
+  }
+
+  @Override
+  void openAt(final StringCursor cursor, final int position) {
+    cursor.position = position;
+    cursor.state = initialState;
+    cursor.length = nextValue(cursor);
+  }
+
+  @Override
+  char next(final StringCursor cursor) {
+    return (char) nextValue(cursor);
+  }
+
+  private int nextValue(final StringCursor cursor) {
+    final int unit = nextUnit(cursor);
+    if (unit != DeobfuscatorHelper.SEVEN_BIT_ESCAPE) {
+      return unit;
+    }
+
+    int value = 0;
+    for (int i = 0; i < DeobfuscatorHelper.SEVEN_BIT_ESCAPED_UNIT_COUNT; ++i) {
+      value = (value << 7) | nextUnit(cursor);
+    }
+    return value;
+  }
+
+  private int nextUnit(final StringCursor cursor) {
+    final int position = cursor.position++;
+    if (isDeflated()) {
+      final String block = getBlock(position / DeobfuscatorHelper.DEFLATE_BLOCK_LENGTH);
+      return block.charAt(position % DeobfuscatorHelper.DEFLATE_BLOCK_LENGTH) & DeobfuscatorHelper.SEVEN_BIT_UNIT_MASK;
+    }
+
+    cursor.state = DeobfuscatorHelper.getCharAt(position, chunks, loader, cursor.state);
+    return (int) ((cursor.state >>> 32) & DeobfuscatorHelper.SEVEN_BIT_UNIT_MASK);
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid;
+
+import java.lang.ref.SoftReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class SoftStringCache implements StringCache {
+  private final AtomicReferenceArray<Entry> entries;
+  private final int mask;
+
+  public SoftStringCache(final int capacity) {
+    // A slot is bound to an id forever and only its reference is replaced after the GC clears it, so the table
+    // stays at most half full like UnboundedStringCache.
+    final int size = StringCacheHelper.getTableSize(capacity);
+    entries = new AtomicReferenceArray<Entry>(size);
+    mask = size - 1;
+  }
+
+  @Override
+  public String get(final long id) {
+    int index = StringCacheHelper.hash(id) & mask;
+    for (int i = 0; i <= mask; ++i) {
+      final Entry entry = entries.get(index);
+      if (entry == null) {
+        return null;
+      }
+
+      if (entry.id == id) {
+        return entry.get();
+      }
+
+      index = (index + 1) & mask;
+    }
+
+    return null;
+  }
+
+  @Override
+  public String put(final long id, final String string) {
+    int index = StringCacheHelper.hash(id) & mask;
+    for (int i = 0; i <= mask; ) {
+      final Entry entry = entries.get(index);
+      if (entry == null) {
+        if (entries.compareAndSet(index, null, new Entry(id, string))) {
+          return string;
+        }
+
+        continue;
+      }
+
+      if (entry.id == id) {
+        final String cachedString = entry.get();
+        if (cachedString != null) {
+          return cachedString;
+        }
+
+        if (entries.compareAndSet(index, entry, new Entry(id, string))) {
+          return string;
+        }
+
+        continue;
+      }
+
+      index = (index + 1) & mask;
+      ++i;
+    }
+
+    return string;
+  }
+
+  private static final class Entry extends SoftReference<String> {
+    final long id;
+
+    Entry(final long id, final String string) {
+      super(string);
+      this.id = id;
+    }
+  }
+}
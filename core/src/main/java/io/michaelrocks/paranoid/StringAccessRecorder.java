@@ -0,0 +1,176 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how often and when strings of a deobfuscator are accessed in a build with the {@code recordStringAccess}
+ * option enabled.
+ * <p>
+ * Every string is identified by a key that is computed from the string at build time, so a profile stays valid when
+ * the strings are assigned different ids in another build. Recording never takes a lock: ids are mapped to slots with
+ * a table that doesn't change after the recorder is created, and hits are counted in several stripes, so threads that
+ * access the same string don't contend for a single counter.
+ */
+public class StringAccessRecorder {
+  public static final String PROFILE_HEADER = "# paranoid string access profile 1";
+
+  private static final int STRIPE_COUNT = 4;
+
+  private static final ConcurrentLinkedQueue<StringAccessRecorder> recorders =
+      new ConcurrentLinkedQueue<StringAccessRecorder>();
+  private static final AtomicInteger accessOrder = new AtomicInteger();
+  private static final long startTime = System.nanoTime();
+
+  private final String name;
+  private final long[] ids;
+  private final int[] slots;
+  private final int mask;
+  private final long[] keys;
+  private final AtomicLongArray hits;
+  private final AtomicIntegerArray firstAccessOrders;
+  private final AtomicLongArray firstAccessTimes;
+  private final AtomicLong unknownHits = new AtomicLong();
+
+  // The table holds an id and a key of every string one after another.
+  public StringAccessRecorder(final String name, final String[] table, final int count) {
+    this.name = name;
+    final int tableSize = StringCacheHelper.getTableSize(count);
+    ids = new long[tableSize];
+    slots = new int[tableSize];
+    mask = tableSize - 1;
+    keys = new long[count];
+    for (int slot = 0; slot < count; ++slot) {
+      final long id = DeobfuscatorHelper.getTableEntry(table, slot * 2);
+      keys[slot] = DeobfuscatorHelper.getTableEntry(table, slot * 2 + 1);
+      int index = StringCacheHelper.hash(id) & mask;
+      while (slots[index] != 0) {
+        index = (index + 1) & mask;
+      }
+      ids[index] = id;
+      // Zero marks an empty entry, so slots are stored one-based.
+      slots[index] = slot + 1;
+    }
+
+    // Stripes of a slot are far apart, so threads that count hits of the same string don't share a cache line.
+    hits = new AtomicLongArray(count * STRIPE_COUNT);
+    firstAccessOrders = new AtomicIntegerArray(count);
+    firstAccessTimes = new AtomicLongArray(count);
+    recorders.add(this);
+  }
+
+  public void record(final long id) {
+    final int slot = findSlot(id);
+    if (slot < 0) {
+      unknownHits.incrementAndGet();
+      return;
+    }
+
+    final int stripe = (int) Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+    hits.incrementAndGet(stripe * keys.length + slot);
+    if (firstAccessTimes.get(slot) == 0) {
+      // Zero marks a string that hasn't been accessed, so the time is at least one.
+      final long time = Math.max(System.nanoTime() - startTime, 1);
+      if (firstAccessTimes.compareAndSet(slot, 0, time)) {
+        firstAccessOrders.set(slot, accessOrder.incrementAndGet());
+      }
+    }
+  }
+
+  /**
+   * Writes a profile of every recorder created so far in the format the processor reads. Every line holds a key of
+   * a string in hex, its hit count, the order of its first access and the time of its first access in nanoseconds
+   * since the recording started. Strings are listed in the order they've been accessed first.
+   */
+  public static void dump(final Writer writer) throws IOException {
+    writer.write(PROFILE_HEADER);
+    writer.write('\n');
+    for (final StringAccessRecorder recorder : recorders) {
+      recorder.dumpRecorder(writer);
+    }
+    writer.flush();
+  }
+
+  public static void dump(final File file) throws IOException {
+    final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+    try {
+      dump(writer);
+    } finally {
+      writer.close();
+    }
+  }
+
+  private void dumpRecorder(final Writer writer) throws IOException {
+    final List<Integer> accessedSlots = new ArrayList<Integer>();
+    for (int slot = 0; slot < keys.length; ++slot) {
+      if (firstAccessOrders.get(slot) != 0) {
+        accessedSlots.add(slot);
+      }
+    }
+    Collections.sort(accessedSlots, new Comparator<Integer>() {
+      @Override
+      public int compare(final Integer slot1, final Integer slot2) {
+        final int order1 = firstAccessOrders.get(slot1);
+        final int order2 = firstAccessOrders.get(slot2);
+        return order1 < order2 ? -1 : (order1 == order2 ? 0 : 1);
+      }
+    });
+
+    writer.write("# " + name + ", unknown hits: " + unknownHits.get() + '\n');
+    for (final int slot : accessedSlots) {
+      long slotHits = 0;
+      for (int stripe = 0; stripe < STRIPE_COUNT; ++stripe) {
+        slotHits += hits.get(stripe * keys.length + slot);
+      }
+      writer.write(String.format(Locale.US, "%016x %d %d %d\n", keys[slot], slotHits, firstAccessOrders.get(slot),
+          firstAccessTimes.get(slot)));
+    }
+  }
+
+  private int findSlot(final long id) {
+    int index = StringCacheHelper.hash(id) & mask;
+    for (int i = 0; i <= mask; ++i) {
+      final int slot = slots[index];
+      if (slot == 0) {
+        return -1;
+      }
+
+      if (ids[index] == id) {
+        return slot - 1;
+      }
+
+      index = (index + 1) & mask;
+    }
+
+    return -1;
+  }
+}
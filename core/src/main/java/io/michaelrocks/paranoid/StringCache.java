@@ -0,0 +1,28 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid;
+
+public interface StringCache {
+  String get(long id);
+
+  /**
+   * Caches a decoded string unless another thread has already cached a string with the same id.
+   *
+   * @return the string that is stored in the cache for the id or {@code string} if it cannot be cached.
+   */
+  String put(long id, String string);
+}
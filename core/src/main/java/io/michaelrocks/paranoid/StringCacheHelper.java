@@ -0,0 +1,32 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid;
+
+class StringCacheHelper {
+  private StringCacheHelper() {
+    // Cannot be instantiated.
+  }
+
+  static int getTableSize(final int capacity) {
+    return Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1) << 1;
+  }
+
+  static int hash(final long id) {
+    final int hash = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+    return hash ^ (hash >>> 16);
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid;
+
+/**
+ * A position in a string of a pool and the keystream state at that position. A cursor never leaves the call that
+ * created it, so a JIT compiler can usually keep it on the stack.
+ */
+final class StringCursor {
+  // The position of the next unit in the pool.
+  int position;
+  // The state the next unit is decrypted with.
+  long state;
+  // The length of the string in chars.
+  int length;
+}
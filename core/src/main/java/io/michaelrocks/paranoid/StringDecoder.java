@@ -0,0 +1,25 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid;
+
+/**
+ * Decodes strings of a deobfuscator that was generated for an obfuscation tier. An implementation must have a
+ * public constructor that the deobfuscator calls once and must be thread-safe.
+ */
+public interface StringDecoder {
+  String decode(long id, String[] chunks, ChunkLoader loader);
+}
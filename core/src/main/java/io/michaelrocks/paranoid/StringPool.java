@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * Strings of a generated deobfuscator. The deobfuscator creates a pool for the format its strings were encoded in and
+ * forwards every call to the pool. A pool is thread-safe.
+ * <p>
+ * An id is a masked id or, if the pool has an offset table, a position of a string in the table.
+ */
+public abstract class StringPool {
+  // Without flags every char of a string is stored in a UTF-16 unit of the pool encrypted in the chained mode.
+  public static final int FORMAT_SEVEN_BIT = 1;
+  public static final int FORMAT_DEFLATE = 2;
+  public static final int FORMAT_COUNTER = 4;
+  public static final int FORMAT_PACKED = 8;
+
+  private final StringCache cache;
+
+  StringPool(final StringCache cache) {
+    this.cache = cache;
+  }
+
+  public static StringPool create(final int format, final int seed, final String[] chunks, final ChunkLoader loader,
+      final String[] offsets, final StringCache cache) {
+    if ((format & FORMAT_PACKED) != 0) {
+      return new PackedStringPool(format, seed, chunks, loader, cache);
+    }
+    if ((format & (FORMAT_SEVEN_BIT | FORMAT_DEFLATE)) != 0) {
+      return new SevenBitStringPool(format, seed, chunks, loader, offsets, cache);
+    }
+    if ((format & FORMAT_COUNTER) != 0) {
+      return new CounterStringPool(seed, chunks, loader, offsets, cache);
+    }
+    return new ChainedStringPool(seed, chunks, loader, offsets, cache);
+  }
+
+  public static StringPool create(final StringDecoder decoder, final String[] chunks, final ChunkLoader loader,
+      final StringCache cache) {
+    return new DecoderStringPool(decoder, chunks, loader, cache);
+  }
+
+  public String getString(final long id) {
+    if (cache == null) {
+      return decode(id);
+    }
+
+    final String string = cache.get(id);
+    return string != null ? string : cache.put(id, decode(id));
+  }
+
+  // Decodes strings that are stored one after another starting with the string with the given id.
+  public String[] getStrings(final long id, final int count) {
+    throw new UnsupportedOperationException("Strings of this pool cannot be decoded together");
+  }
+
+  public boolean equals(final long id, final CharSequence string) {
+    return string != null && getString(id).contentEquals(string);
+  }
+
+  public StringBuilder appendTo(final long id, final StringBuilder builder) {
+    return builder.append(getString(id));
+  }
+
+  public int length(final long id) {
+    return getString(id).length();
+  }
+
+  // Decodes a string into an array provided by a caller and returns the length of the string. Nothing is written to
+  // the array if the string doesn't fit into it.
+  public int getChars(final long id, final char[] dest, final int offset) {
+    final String string = getString(id);
+    checkBounds(dest, offset, string.length());
+    string.getChars(0, string.length(), dest, offset);
+    return string.length();
+  }
+
+  public Reader getReader(final long id) {
+    return new StringReader(getString(id));
+  }
+
+  abstract String decode(long id);
+
+  static void checkBounds(final char[] dest, final int offset, final int length) {
+    if (offset < 0 || offset > dest.length - length) {
+      throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + dest.length);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid;
+
+import java.security.GeneralSecurityException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+public class StrongStringDecoder implements StringDecoder {
+  public static final String TRANSFORMATION = "AES/CTR/NoPadding";
+  public static final int BLOCK_SIZE = 16;
+
+  private final SecretKeySpec key;
+
+  // Every char of the key holds a byte.
+  public StrongStringDecoder(final String key) {
+    final byte[] bytes = new byte[key.length()];
+    for (int i = 0; i < bytes.length; ++i) {
+      bytes[i] = (byte) key.charAt(i);
+    }
+    this.key = new SecretKeySpec(bytes, "AES");
+  }
+
+  @Override
+  public String decode(final long id, final String[] chunks, final ChunkLoader loader) {
+    // An id holds the byte offset of a string in the pool and the length of the string. Every char of the pool holds
+    // a byte of the pool, which is encrypted in counter mode as a whole, so decryption can start at any block.
+    final int offset = (int) (id >>> 32);
+    final int length = (int) id;
+    final int blockOffset = offset % BLOCK_SIZE;
+    final byte[] encrypted = new byte[blockOffset + length * 2];
+    for (int i = 0; i < length * 2; ++i) {
+      encrypted[blockOffset + i] = (byte) getCharAt(offset + i, chunks, loader);
+    }
+
+    final byte[] decrypted;
+    try {
+      final Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+      cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(getCounterBlock(offset / BLOCK_SIZE)));
+      decrypted = cipher.doFinal(encrypted);
+    } catch (final GeneralSecurityException exception) {
+      throw new IllegalStateException("Cannot decrypt string", exception);
+    }
+
+    final char[] chars = new char[length];
+    for (int i = 0; i < length; ++i) {
+      final int byteIndex = blockOffset + i * 2;
+      chars[i] = (char) (((decrypted[byteIndex] & 0xff) << 8) | (decrypted[byteIndex + 1] & 0xff));
+    }
+    return new String(chars);
+  }
+
+  public static byte[] getCounterBlock(final int blockIndex) {
+    final byte[] counter = new byte[BLOCK_SIZE];
+    counter[BLOCK_SIZE - 4] = (byte) (blockIndex >>> 24);
+    counter[BLOCK_SIZE - 3] = (byte) (blockIndex >>> 16);
+    counter[BLOCK_SIZE - 2] = (byte) (blockIndex >>> 8);
+    counter[BLOCK_SIZE - 1] = (byte) blockIndex;
+    return counter;
+  }
+
+  private static char getCharAt(final int charIndex, final String[] chunks, final ChunkLoader loader) {
+    final int chunkIndex = charIndex / DeobfuscatorHelper.MAX_CHUNK_LENGTH;
+    String chunk = chunks[chunkIndex];
+    if (chunk == null) {
+      chunk = loader.loadChunk(chunkIndex);
+      chunks[chunkIndex] = chunk;
+    }
+    return chunk.charAt(charIndex % DeobfuscatorHelper.MAX_CHUNK_LENGTH);
+  }
+}
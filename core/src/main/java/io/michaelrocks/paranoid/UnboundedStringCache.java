@@ -0,0 +1,92 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class UnboundedStringCache implements StringCache {
+  private final AtomicReferenceArray<Entry> entries;
+  private final int mask;
+
+  public UnboundedStringCache(final int capacity) {
+    // Entries are never removed, so keeping the table at most half full guarantees that every probe sequence ends
+    // at an empty slot.
+    final int size = StringCacheHelper.getTableSize(capacity);
+    entries = new AtomicReferenceArray<Entry>(size);
+    mask = size - 1;
+  }
+
+  @Override
+  public String get(final long id) {
+    int index = StringCacheHelper.hash(id) & mask;
+    for (int i = 0; i <= mask; ++i) {
+      final Entry entry = entries.get(index);
+      if (entry == null) {
+        return null;
+      }
+
+      if (entry.id == id) {
+        return entry.string;
+      }
+
+      index = (index + 1) & mask;
+    }
+
+    return null;
+  }
+
+  @Override
+  public String put(final long id, final String string) {
+    Entry newEntry = null;
+    int index = StringCacheHelper.hash(id) & mask;
+    for (int i = 0; i <= mask; ) {
+      final Entry entry = entries.get(index);
+      if (entry == null) {
+        if (newEntry == null) {
+          newEntry = new Entry(id, string);
+        }
+
+        if (entries.compareAndSet(index, null, newEntry)) {
+          return string;
+        }
+
+        // Another thread has taken the slot. Check whether it has published the same id.
+        continue;
+      }
+
+      if (entry.id == id) {
+        return entry.string;
+      }
+
+      index = (index + 1) & mask;
+      ++i;
+    }
+
+    // The table is full. This can only happen if the cache is used for more strings than it was sized for.
+    return string;
+  }
+
+  private static final class Entry {
+    final long id;
+    final String string;
+
+    Entry(final long id, final String string) {
+      this.id = id;
+      this.string = string;
+    }
+  }
+}
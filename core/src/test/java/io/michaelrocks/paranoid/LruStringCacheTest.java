@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LruStringCacheTest {
+  @Test
+  public void evictsUnreferencedStrings() {
+    final LruStringCache cache = new LruStringCache(2);
+    cache.put(1, "One");
+    cache.put(2, "Two");
+    assertEquals("One", cache.get(1));
+    // The first string has been read since it was cached, so the second one is evicted instead.
+    cache.put(3, "Three");
+    assertNull(cache.get(2));
+    assertEquals("One", cache.get(1));
+    assertEquals("Three", cache.get(3));
+  }
+
+  @Test
+  public void evictsStringUnderHandWhenAllStringsAreReferenced() {
+    final LruStringCache cache = new LruStringCache(3);
+    cache.put(1, "One");
+    cache.put(2, "Two");
+    cache.put(3, "Three");
+    assertEquals("One", cache.get(1));
+    assertEquals("Two", cache.get(2));
+    assertEquals("Three", cache.get(3));
+
+    cache.put(4, "Four");
+    assertNull(cache.get(1));
+    assertEquals("Two", cache.get(2));
+    assertEquals("Three", cache.get(3));
+    assertEquals("Four", cache.get(4));
+  }
+
+  @Test(timeout = 10000)
+  public void evictsStringsWhileReadersReferenceThem() throws InterruptedException {
+    final LruStringCache cache = new LruStringCache(4);
+    for (int id = 0; id < 4; ++id) {
+      cache.put(id, "String " + id);
+    }
+
+    // Readers mark every string again right after the hand clears it, which must not keep the hand moving forever.
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final Thread[] readers = new Thread[2];
+    for (int i = 0; i < readers.length; ++i) {
+      readers[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          while (running.get()) {
+            for (int id = 0; id < 1000; ++id) {
+              cache.get(id);
+            }
+          }
+        }
+      });
+      readers[i].start();
+    }
+
+    try {
+      for (int id = 4; id < 1000; ++id) {
+        cache.put(id, "String " + id);
+        assertEquals("String " + id, cache.get(id));
+      }
+    } finally {
+      running.set(false);
+      for (final Thread reader : readers) {
+        reader.join();
+      }
+    }
+  }
+
+  @Test
+  public void rebuildsTableAfterManyEvictions() {
+    final LruStringCache cache = new LruStringCache(4);
+    for (int id = 0; id < 1000; ++id) {
+      cache.put(id, "String " + id);
+      assertEquals("String " + id, cache.get(id));
+    }
+
+    int cachedCount = 0;
+    for (int id = 0; id < 1000; ++id) {
+      if (cache.get(id) != null) {
+        cachedCount += 1;
+      }
+    }
+    assertEquals(4, cachedCount);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyCapacity() {
+    new LruStringCache(0);
+  }
+}
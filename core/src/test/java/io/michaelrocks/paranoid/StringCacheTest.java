@@ -0,0 +1,118 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StringCacheTest {
+  private static final int CAPACITY = 16;
+
+  @Test
+  public void arrayCacheKeepsFirstString() {
+    assertKeepsFirstString(new ArrayStringCache(CAPACITY));
+  }
+
+  @Test
+  public void unboundedCacheKeepsFirstString() {
+    assertKeepsFirstString(new UnboundedStringCache(CAPACITY));
+  }
+
+  @Test
+  public void softCacheKeepsFirstString() {
+    assertKeepsFirstString(new SoftStringCache(CAPACITY));
+  }
+
+  @Test
+  public void lruCacheKeepsFirstString() {
+    assertKeepsFirstString(new LruStringCache(CAPACITY));
+  }
+
+  @Test
+  public void unboundedCacheReturnsStringWhenFull() {
+    final StringCache cache = new UnboundedStringCache(1);
+    final int tableSize = StringCacheHelper.getTableSize(1);
+    for (int id = 0; id < tableSize; ++id) {
+      cache.put(id, "String " + id);
+    }
+
+    final String string = "Extra";
+    assertSame(string, cache.put(tableSize, string));
+    assertNull(cache.get(tableSize));
+  }
+
+  @Test
+  public void concurrentPutsAgreeOnString() throws InterruptedException {
+    final StringCache[] caches = {
+        new ArrayStringCache(CAPACITY),
+        new UnboundedStringCache(CAPACITY),
+        new SoftStringCache(CAPACITY),
+        new LruStringCache(CAPACITY)
+    };
+    for (final StringCache cache : caches) {
+      final int threadCount = 8;
+      final AtomicReferenceArray<String> results = new AtomicReferenceArray<String>(threadCount);
+      final CountDownLatch startLatch = new CountDownLatch(1);
+      final Thread[] threads = new Thread[threadCount];
+      for (int i = 0; i < threadCount; ++i) {
+        final int index = i;
+        threads[i] = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              startLatch.await();
+            } catch (final InterruptedException exception) {
+              Thread.currentThread().interrupt();
+            }
+            results.set(index, cache.put(7, new String("String")));
+          }
+        });
+        threads[i].start();
+      }
+
+      startLatch.countDown();
+      for (final Thread thread : threads) {
+        thread.join();
+      }
+
+      final String cachedString = cache.get(7);
+      for (int i = 0; i < threadCount; ++i) {
+        assertSame(cachedString, results.get(i));
+      }
+    }
+  }
+
+  private static void assertKeepsFirstString(final StringCache cache) {
+    for (int id = 0; id < CAPACITY; ++id) {
+      assertNull(cache.get(id));
+    }
+
+    final String string = "String";
+    assertSame(string, cache.put(3, string));
+    assertSame(string, cache.get(3));
+    assertSame(string, cache.put(3, new String(string)));
+    assertSame(string, cache.get(3));
+    assertNull(cache.get(4));
+    assertTrue(cache.put(4, "Other") != string);
+  }
+}
@@ -16,9 +16,28 @@
 
 package io.michaelrocks.paranoid.plugin
 
+import java.io.File
+
 open class ParanoidExtension {
   var isEnabled: Boolean = true
   var isCacheable: Boolean = false
   var includeSubprojects: Boolean = false
   var obfuscationSeed: Int? = null
+  var stringCache: String = "none"
+  var stringCacheCapacity: Int = 256
+  var cacheLiterals: Boolean = false
+  var shardCount: Int = 1
+  var shardPackages: List<String> = emptyList()
+  var stringEncoding: String = "utf16"
+  var poolPacking: Boolean = false
+  var poolLayout: String = "none"
+  var poolAccessOrder: List<String> = emptyList()
+  var lazyConstants: Boolean = false
+  var stringIdFormat: String = "masked"
+  var cipherMode: String = "chained"
+  var warmUpClasses: List<String> = emptyList()
+  var recordStringAccess: Boolean = false
+  var stringAccessProfile: File? = null
+  var hotStringThreshold: Int = 100
+  var warmUpWindowMillis: Int = 1000
 }
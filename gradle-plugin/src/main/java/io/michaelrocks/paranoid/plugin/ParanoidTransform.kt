@@ -26,6 +26,13 @@ import com.android.build.api.transform.TransformInvocation
 import com.android.build.api.transform.TransformOutputProvider
 import com.android.build.gradle.BaseExtension
 import io.michaelrocks.paranoid.processor.ParanoidProcessor
+import io.michaelrocks.paranoid.processor.model.CipherMode
+import io.michaelrocks.paranoid.processor.model.PoolLayout
+import io.michaelrocks.paranoid.processor.model.ShardingPolicy
+import io.michaelrocks.paranoid.processor.model.StringCachePolicy
+import io.michaelrocks.paranoid.processor.model.StringEncoding
+import io.michaelrocks.paranoid.processor.model.StringIdFormat
+import org.gradle.api.GradleException
 import java.io.File
 import java.security.SecureRandom
 import java.util.EnumSet
@@ -70,7 +77,21 @@ class ParanoidTransform(
         input.jarInputs.map { it.file } + input.directoryInputs.map { it.file }
       },
       bootClasspath = android.bootClasspath,
-      projectName = invocation.context.path.replace(":transformClassesWithParanoidFor", ":").replace(':', '$')
+      projectName = invocation.context.path.replace(":transformClassesWithParanoidFor", ":").replace(':', '$'),
+      stringCachePolicy = createStringCachePolicy(),
+      cacheLiterals = paranoid.cacheLiterals,
+      shardingPolicy = createShardingPolicy(),
+      stringEncoding = createStringEncoding(),
+      poolPacking = paranoid.poolPacking,
+      poolLayout = createPoolLayout(),
+      lazyConstants = paranoid.lazyConstants,
+      stringIdFormat = createStringIdFormat(),
+      cipherMode = createCipherMode(),
+      warmUpClasses = createWarmUpClasses(),
+      recordStringAccess = paranoid.recordStringAccess,
+      stringAccessProfile = createStringAccessProfile(),
+      hotStringThreshold = createHotStringThreshold(),
+      warmUpWindowMillis = createWarmUpWindowMillis()
     )
 
     try {
@@ -121,7 +142,24 @@ class ParanoidTransform(
       "version" to Build.VERSION,
       "enabled" to paranoid.isEnabled,
       "includeSubprojects" to paranoid.includeSubprojects,
-      "obfuscationSeed" to paranoid.obfuscationSeed
+      "obfuscationSeed" to paranoid.obfuscationSeed,
+      "stringCache" to paranoid.stringCache,
+      "stringCacheCapacity" to paranoid.stringCacheCapacity,
+      "cacheLiterals" to paranoid.cacheLiterals,
+      "shardCount" to paranoid.shardCount,
+      "shardPackages" to paranoid.shardPackages,
+      "stringEncoding" to paranoid.stringEncoding,
+      "poolPacking" to paranoid.poolPacking,
+      "poolLayout" to paranoid.poolLayout,
+      "poolAccessOrder" to paranoid.poolAccessOrder,
+      "lazyConstants" to paranoid.lazyConstants,
+      "stringIdFormat" to paranoid.stringIdFormat,
+      "cipherMode" to paranoid.cipherMode,
+      "warmUpClasses" to paranoid.warmUpClasses,
+      "recordStringAccess" to paranoid.recordStringAccess,
+      "stringAccessProfile" to paranoid.stringAccessProfile?.takeIf { it.isFile }?.readText(),
+      "hotStringThreshold" to paranoid.hotStringThreshold,
+      "warmUpWindowMillis" to paranoid.warmUpWindowMillis
     )
   }
 
@@ -140,6 +178,129 @@ class ParanoidTransform(
     }
   }
 
+  private fun createStringCachePolicy(): StringCachePolicy {
+    return when (paranoid.stringCache) {
+      "none" -> StringCachePolicy.None
+      "unbounded" -> StringCachePolicy.Unbounded
+      "lru" -> createLruStringCachePolicy()
+      "soft" -> StringCachePolicy.Soft
+      else -> throw GradleException("Unknown string cache policy: ${paranoid.stringCache}")
+    }
+  }
+
+  private fun createLruStringCachePolicy(): StringCachePolicy {
+    if (paranoid.stringCacheCapacity <= 0) {
+      throw GradleException("String cache capacity must be positive: ${paranoid.stringCacheCapacity}")
+    }
+    return StringCachePolicy.Lru(paranoid.stringCacheCapacity)
+  }
+
+  private fun createShardingPolicy(): ShardingPolicy {
+    val shardCount = paranoid.shardCount
+    val shardPackages = paranoid.shardPackages
+    return when {
+      shardCount <= 0 -> throw GradleException("Shard count must be positive: $shardCount")
+      shardPackages.isNotEmpty() && shardCount != 1 -> {
+        throw GradleException("shardCount and shardPackages cannot be used together")
+      }
+      shardPackages.isNotEmpty() -> ShardingPolicy.ByPackage(shardPackages)
+      shardCount > 1 -> ShardingPolicy.ByCount(shardCount)
+      else -> ShardingPolicy.None
+    }
+  }
+
+  private fun createStringEncoding(): StringEncoding {
+    return when (paranoid.stringEncoding) {
+      "utf16" -> StringEncoding.UTF16
+      "7bit" -> StringEncoding.SEVEN_BIT
+      "deflate" -> StringEncoding.DEFLATE
+      else -> throw GradleException("Unknown string encoding: ${paranoid.stringEncoding}")
+    }
+  }
+
+  private fun createStringIdFormat(): StringIdFormat {
+    val stringIdFormat = when (paranoid.stringIdFormat) {
+      "masked" -> StringIdFormat.MASKED
+      "indexed" -> StringIdFormat.INDEXED
+      else -> throw GradleException("Unknown string id format: ${paranoid.stringIdFormat}")
+    }
+
+    if (stringIdFormat != StringIdFormat.MASKED && paranoid.poolPacking) {
+      throw GradleException("stringIdFormat ${paranoid.stringIdFormat} and poolPacking cannot be used together")
+    }
+    return stringIdFormat
+  }
+
+  private fun createCipherMode(): CipherMode {
+    val cipherMode = when (paranoid.cipherMode) {
+      "chained" -> CipherMode.CHAINED
+      "counter" -> CipherMode.COUNTER
+      else -> throw GradleException("Unknown cipher mode: ${paranoid.cipherMode}")
+    }
+
+    if (cipherMode == CipherMode.COUNTER && paranoid.stringEncoding != "utf16") {
+      throw GradleException("cipherMode counter requires stringEncoding utf16")
+    }
+    if (cipherMode == CipherMode.COUNTER && paranoid.poolPacking) {
+      throw GradleException("cipherMode counter and poolPacking cannot be used together")
+    }
+    return cipherMode
+  }
+
+  private fun createPoolLayout(): PoolLayout {
+    val poolLayout = when (paranoid.poolLayout) {
+      "none" -> PoolLayout.None
+      "class" -> PoolLayout.ByClass
+      "package" -> PoolLayout.ByPackage
+      "accessOrder" -> createAccessOrderPoolLayout()
+      else -> throw GradleException("Unknown pool layout: ${paranoid.poolLayout}")
+    }
+
+    if (poolLayout != PoolLayout.None && paranoid.poolPacking) {
+      throw GradleException("poolLayout and poolPacking cannot be used together")
+    }
+    return poolLayout
+  }
+
+  private fun createAccessOrderPoolLayout(): PoolLayout {
+    if (paranoid.poolAccessOrder.isEmpty()) {
+      throw GradleException("poolAccessOrder must not be empty when poolLayout is accessOrder")
+    }
+    return PoolLayout.ByAccessOrder(paranoid.poolAccessOrder)
+  }
+
+  private fun createWarmUpClasses(): List<String> {
+    if (paranoid.warmUpClasses.isNotEmpty() && paranoid.stringCache == "none") {
+      throw GradleException("warmUpClasses requires stringCache, because decoded strings are kept in the cache")
+    }
+    return paranoid.warmUpClasses
+  }
+
+  private fun createStringAccessProfile(): File? {
+    val stringAccessProfile = paranoid.stringAccessProfile ?: return null
+    if (paranoid.recordStringAccess) {
+      throw GradleException("recordStringAccess and stringAccessProfile cannot be used together")
+    }
+    if (!stringAccessProfile.isFile) {
+      throw GradleException("String access profile doesn't exist: $stringAccessProfile")
+    }
+    return stringAccessProfile
+  }
+
+  private fun createHotStringThreshold(): Long {
+    if (paranoid.hotStringThreshold <= 0) {
+      throw GradleException("Hot string threshold must be positive: ${paranoid.hotStringThreshold}")
+    }
+    return paranoid.hotStringThreshold.toLong()
+  }
+
+  private fun createWarmUpWindowMillis(): Long {
+    if (paranoid.warmUpWindowMillis <= 0) {
+      throw GradleException("Warm-up window must be positive: ${paranoid.warmUpWindowMillis}")
+    }
+    return paranoid.warmUpWindowMillis.toLong()
+  }
+
   private fun calculateObfuscationSeed(inputs: List<QualifiedContent>): Int {
     val manuallySetObfuscationSeed = paranoid.obfuscationSeed
     return when {
@@ -29,6 +29,8 @@ import com.joom.grip.withFieldInitializer
 import java.io.File
 
 class Analyzer(private val grip: Grip) {
+  private val obfuscatedTypeRegistry = newObfuscatedTypeRegistry(grip.classRegistry).withCache()
+
   fun analyze(inputs: List<File>): AnalysisResult {
     val typesToObfuscate = findTypesToObfuscate(inputs)
     val obfuscationConfigurationsByType = typesToObfuscate.associateBy(
@@ -39,8 +41,7 @@ class Analyzer(private val grip: Grip) {
   }
 
   private fun findTypesToObfuscate(inputs: List<File>): Set<Type.Object> {
-    val registry = newObfuscatedTypeRegistry(grip.classRegistry).withCache()
-    val query = grip select classes from inputs where registry.shouldObfuscate()
+    val query = grip select classes from inputs where obfuscatedTypeRegistry.shouldObfuscate()
     return query.execute().types.toHashSet()
   }
 
@@ -50,7 +51,7 @@ class Analyzer(private val grip: Grip) {
       { it.name },
       { it.value as String }
     )
-    return ClassConfiguration(type, stringConstantsByName)
+    return ClassConfiguration(type, stringConstantsByName, obfuscatedTypeRegistry.getObfuscationTier(type))
   }
 
   private fun findConstantStringFields(type: Type.Object): Collection<FieldMirror> {
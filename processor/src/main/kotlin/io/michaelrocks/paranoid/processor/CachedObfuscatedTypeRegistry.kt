@@ -17,16 +17,24 @@
 package io.michaelrocks.paranoid.processor
 
 import com.joom.grip.mirrors.Type
+import io.michaelrocks.paranoid.processor.model.ObfuscationTier
 
 class CachedObfuscatedTypeRegistry(
   private val registry: ObfuscatedTypeRegistry
 ) : ObfuscatedTypeRegistry {
 
   private val cache = mutableMapOf<Type.Object, Boolean>()
+  private val tierCache = mutableMapOf<Type.Object, ObfuscationTier>()
 
   override fun shouldObfuscate(type: Type.Object): Boolean {
     return cache.getOrPut(type) {
       registry.shouldObfuscate(type)
     }
   }
+
+  override fun getObfuscationTier(type: Type.Object): ObfuscationTier {
+    return tierCache.getOrPut(type) {
+      registry.getObfuscationTier(type)
+    }
+  }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.mirrors.Type
+import io.michaelrocks.paranoid.processor.model.PoolLayout
+
+class CollectingStringRegistry : StringRegistry {
+  var owner: Type.Object? = null
+
+  private val stringsByOwner = LinkedHashMap<Type.Object, LinkedHashSet<String>>()
+
+  override fun registerString(string: String): Long {
+    val owner = checkNotNull(owner) { "Owner of the string isn't set: $string" }
+    stringsByOwner.getOrPut(owner) { LinkedHashSet() } += string
+    return 0L
+  }
+
+  override fun registerStrings(strings: List<String>): Long? {
+    // Strings are registered one by one instead, so strings of a class are collected together.
+    return null
+  }
+
+  // Returns collected strings in the order they should be stored in the pool. A string used by several
+  // classes is stored with the first of them.
+  fun getStrings(poolLayout: PoolLayout): Collection<String> {
+    val owners = when (poolLayout) {
+      PoolLayout.None -> stringsByOwner.keys
+      // Nested classes follow their outer class in this order.
+      PoolLayout.ByClass -> stringsByOwner.keys.sortedBy { it.internalName }
+      PoolLayout.ByPackage -> stringsByOwner.keys.sortedBy { it.internalName.substringBeforeLast('/', "") }
+      is PoolLayout.ByAccessOrder -> {
+        val ranksByInternalName = HashMap<String, Int>()
+        poolLayout.classNames.forEachIndexed { index, className ->
+          ranksByInternalName.putIfAbsent(className.replace('.', '/'), index)
+        }
+        stringsByOwner.keys.sortedBy { ranksByInternalName[it.internalName] ?: Int.MAX_VALUE }
+      }
+    }
+    return owners.flatMapTo(LinkedHashSet()) { stringsByOwner.getValue(it) }
+  }
+
+  override fun getStringCount(): Int {
+    return getStrings(PoolLayout.None).size
+  }
+
+  override fun getRegisteredStrings(): Collection<String> {
+    return getStrings(PoolLayout.None)
+  }
+
+  override fun getDuplicateStringCount(): Int {
+    return 0
+  }
+
+  override fun getDuplicateStringLength(): Long {
+    return 0L
+  }
+
+  override fun getSharedStringLength(): Long {
+    return 0L
+  }
+
+  override fun getAllChunks(): List<String> {
+    return emptyList()
+  }
+
+  override fun getOffsetChunks(): List<String> {
+    return emptyList()
+  }
+}
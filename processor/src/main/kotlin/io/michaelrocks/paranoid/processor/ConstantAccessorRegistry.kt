@@ -0,0 +1,94 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.ClassRegistry
+import com.joom.grip.mirrors.Type
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import io.michaelrocks.paranoid.processor.model.ConstantAccessor
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.commons.Method
+
+interface ConstantAccessorRegistry {
+  fun getAccessor(configuration: ClassConfiguration, fieldName: String): ConstantAccessor?
+  // Returns an accessor of a field referenced by a getstatic instruction or null if the field isn't a lazy constant.
+  fun findAccessor(owner: String, fieldName: String, fieldDesc: String): ConstantAccessor?
+}
+
+class ConstantAccessorRegistryImpl(
+  analysisResult: AnalysisResult,
+  private val classRegistry: ClassRegistry
+) : ConstantAccessorRegistry {
+
+  // Fields of interfaces must be final, so interface constants are initialized eagerly.
+  private val accessorsByField =
+    analysisResult.configurationsByType.values
+      .filter { classRegistry.getClassMirror(it.container).access and Opcodes.ACC_INTERFACE == 0 }
+      .flatMap { configuration ->
+        configuration.constantStringsByFieldName.keys
+          .filter { isLazyConstant(configuration.container, it) }
+          .mapIndexed { index, fieldName ->
+            val method = Method("$CONSTANT_ACCESSOR_METHOD_PREFIX$index", "()$STRING_DESCRIPTOR")
+            FieldKey(configuration.container, fieldName) to ConstantAccessor(configuration.container, method)
+          }
+      }
+      .toMap()
+  private val fieldNames = accessorsByField.keys.mapTo(HashSet()) { it.fieldName }
+  private val resolvedAccessorsByField = HashMap<FieldKey, ConstantAccessor?>()
+
+  override fun getAccessor(configuration: ClassConfiguration, fieldName: String): ConstantAccessor? {
+    return accessorsByField[FieldKey(configuration.container, fieldName)]
+  }
+
+  override fun findAccessor(owner: String, fieldName: String, fieldDesc: String): ConstantAccessor? {
+    if (fieldDesc != STRING_DESCRIPTOR || fieldName !in fieldNames) {
+      return null
+    }
+
+    // A field may be referenced through a subclass of a class that declares it.
+    val key = FieldKey(getObjectTypeByInternalName(owner), fieldName)
+    return resolvedAccessorsByField.getOrPut(key) {
+      findFieldOwner(key.owner, fieldName)?.let { accessorsByField[FieldKey(it, fieldName)] }
+    }
+  }
+
+  // Public and protected constants may be read by classes that aren't processed, so they stay final and are
+  // initialized eagerly.
+  private fun isLazyConstant(type: Type.Object, fieldName: String): Boolean {
+    val field = classRegistry.getClassMirror(type).fields.firstOrNull { it.name == fieldName } ?: return false
+    return field.access and (Opcodes.ACC_PUBLIC or Opcodes.ACC_PROTECTED) == 0
+  }
+
+  private fun findFieldOwner(type: Type.Object, fieldName: String): Type.Object? {
+    val mirror = classRegistry.getClassMirror(type)
+    if (mirror.fields.any { it.name == fieldName }) {
+      return type
+    }
+
+    mirror.interfaces.forEach { interfaceType ->
+      findFieldOwner(interfaceType, fieldName)?.let { return it }
+    }
+    return mirror.superType?.let { findFieldOwner(it, fieldName) }
+  }
+
+  private data class FieldKey(val owner: Type.Object, val fieldName: String)
+
+  companion object {
+    private const val CONSTANT_ACCESSOR_METHOD_PREFIX = "paranoid\$getConstant\$"
+    private const val STRING_DESCRIPTOR = "Ljava/lang/String;"
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+
+class ConstantReadsClassPatcher(
+  private val constantAccessorRegistry: ConstantAccessorRegistry,
+  asmApi: Int,
+  delegate: ClassVisitor,
+) : ClassVisitor(asmApi, delegate) {
+
+  override fun visitMethod(
+    access: Int,
+    name: String,
+    desc: String,
+    signature: String?,
+    exceptions: Array<out String>?
+  ): MethodVisitor {
+    val visitor = super.visitMethod(access, name, desc, signature, exceptions)
+    return object : MethodVisitor(api, visitor) {
+      override fun visitFieldInsn(opcode: Int, owner: String, name: String, descriptor: String) {
+        val accessor = if (opcode == Opcodes.GETSTATIC) {
+          constantAccessorRegistry.findAccessor(owner, name, descriptor)
+        } else {
+          null
+        }
+
+        if (accessor != null) {
+          super.visitMethodInsn(
+            Opcodes.INVOKESTATIC,
+            accessor.owner.internalName,
+            accessor.method.name,
+            accessor.method.descriptor,
+            false
+          )
+        } else {
+          super.visitFieldInsn(opcode, owner, name, descriptor)
+        }
+      }
+    }
+  }
+}
@@ -18,21 +18,41 @@ package io.michaelrocks.paranoid.processor
 
 import com.joom.grip.ClassRegistry
 import com.joom.grip.mirrors.toAsmType
+import io.michaelrocks.paranoid.StringPool
+import io.michaelrocks.paranoid.processor.model.CipherMode
 import io.michaelrocks.paranoid.processor.model.Deobfuscator
+import io.michaelrocks.paranoid.processor.model.StringCachePolicy
+import io.michaelrocks.paranoid.processor.model.StringEncoding
+import io.michaelrocks.paranoid.processor.model.StringIdFormat
 import org.objectweb.asm.ClassVisitor
 import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Label
 import org.objectweb.asm.Opcodes
 import org.objectweb.asm.Opcodes.ACC_PUBLIC
 import org.objectweb.asm.Opcodes.ACC_SUPER
 import org.objectweb.asm.Type
+import org.objectweb.asm.commons.GeneratorAdapter
 import org.objectweb.asm.commons.Method
+import org.objectweb.asm.commons.TableSwitchGenerator
 
 class DeobfuscatorGenerator(
   private val deobfuscator: Deobfuscator,
   private val stringRegistry: StringRegistry,
-  private val classRegistry: ClassRegistry
+  private val classRegistry: ClassRegistry,
+  private val stringCachePolicy: StringCachePolicy = StringCachePolicy.None,
+  private val stringEncoding: StringEncoding = StringEncoding.UTF16,
+  private val seed: Int = 0,
+  private val poolPacking: Boolean = false,
+  private val cipherMode: CipherMode = CipherMode.CHAINED,
+  private val stringCodec: StringCodec? = null,
+  private val warmUpIds: Collection<Long> = emptyList(),
+  // Strings by their ids if accesses to strings are recorded or null otherwise.
+  private val recordedStrings: Map<Long, String>? = null
 ) {
 
+  private val isIndexed = deobfuscator.stringIdFormat == StringIdFormat.INDEXED
+  private val isCounter = cipherMode == CipherMode.COUNTER
+
   fun generateDeobfuscator(): ByteArray {
     val writer = StandaloneClassWriter(ClassWriter.COMPUTE_MAXS or ClassWriter.COMPUTE_FRAMES, classRegistry)
     writer.visit(
@@ -41,13 +61,24 @@ class DeobfuscatorGenerator(
       deobfuscator.type.internalName,
       null,
       OBJECT_TYPE.internalName,
-      null
+      arrayOf(CHUNK_LOADER_TYPE.internalName)
     )
 
     writer.generateFields()
     writer.generateStaticInitializer()
     writer.generateDefaultConstructor()
+    writer.generateLoadChunkMethod()
     writer.generateGetStringMethod()
+    writer.generateEqualsMethods()
+    writer.generateAppendMethod()
+    writer.generateReaderMethod()
+    writer.generateBufferMethods()
+    if (warmUpIds.isNotEmpty()) {
+      writer.generateWarmUpMethod()
+    }
+    if (!poolPacking && !isIndexed && stringCodec == null) {
+      writer.generateGetStringsMethod()
+    }
 
     writer.visitEnd()
     return writer.toByteArray()
@@ -63,24 +94,158 @@ class DeobfuscatorGenerator(
     ).apply {
       visitEnd()
     }
+
+    visitField(
+      Opcodes.ACC_PRIVATE or Opcodes.ACC_STATIC or Opcodes.ACC_FINAL,
+      CHUNK_LOADER_FIELD_NAME,
+      CHUNK_LOADER_FIELD_TYPE.descriptor,
+      null,
+      null
+    ).apply {
+      visitEnd()
+    }
+
+    visitField(
+      Opcodes.ACC_PRIVATE or Opcodes.ACC_STATIC or Opcodes.ACC_FINAL,
+      POOL_FIELD_NAME,
+      POOL_FIELD_TYPE.descriptor,
+      null,
+      null
+    ).apply {
+      visitEnd()
+    }
+
+    if (recordedStrings != null) {
+      visitField(
+        Opcodes.ACC_PRIVATE or Opcodes.ACC_STATIC or Opcodes.ACC_FINAL,
+        RECORDER_FIELD_NAME,
+        RECORDER_FIELD_TYPE.descriptor,
+        null,
+        null
+      ).apply {
+        visitEnd()
+      }
+    }
   }
 
   private fun ClassVisitor.generateStaticInitializer() {
     newMethod(Opcodes.ACC_STATIC, METHOD_STATIC_INITIALIZER) {
-      val chunks = stringRegistry.getAllChunks()
-      push(chunks.size)
+      // Chunks are loaded by loadChunk() on first access, so only the array is allocated here.
+      push(stringRegistry.getAllChunks().size)
       newArray(CHUNKS_ELEMENT_TYPE)
       putStatic(deobfuscator.type.toAsmType(), CHUNKS_FIELD_NAME, CHUNKS_FIELD_TYPE)
 
+      newInstance(deobfuscator.type.toAsmType())
+      dup()
+      invokeConstructor(deobfuscator.type.toAsmType(), METHOD_DEFAULT_CONSTRUCTOR)
+      putStatic(deobfuscator.type.toAsmType(), CHUNK_LOADER_FIELD_NAME, CHUNK_LOADER_FIELD_TYPE)
+
+      newStringPool()
+      putStatic(deobfuscator.type.toAsmType(), POOL_FIELD_NAME, POOL_FIELD_TYPE)
+
+      if (recordedStrings != null) {
+        newStringAccessRecorder(recordedStrings)
+        putStatic(deobfuscator.type.toAsmType(), RECORDER_FIELD_NAME, RECORDER_FIELD_TYPE)
+      }
+    }
+  }
+
+  // The format of the pool is chosen here, so every generated method just delegates to the pool.
+  private fun GeneratorAdapter.newStringPool() {
+    if (stringCodec != null) {
+      stringCodec.newStringDecoder(this, seed)
       getStatic(deobfuscator.type.toAsmType(), CHUNKS_FIELD_NAME, CHUNKS_FIELD_TYPE)
-      chunks.forEachIndexed { index, chunk ->
-        dup()
-        push(index)
-        push(chunk)
-        arrayStore(CHUNKS_ELEMENT_TYPE)
+      getStatic(deobfuscator.type.toAsmType(), CHUNK_LOADER_FIELD_NAME, CHUNK_LOADER_FIELD_TYPE)
+      pushStringCache()
+      invokeStatic(POOL_FIELD_TYPE, METHOD_POOL_CREATE_DECODED)
+      return
+    }
+
+    push(getPoolFormat())
+    push(seed)
+    getStatic(deobfuscator.type.toAsmType(), CHUNKS_FIELD_NAME, CHUNKS_FIELD_TYPE)
+    getStatic(deobfuscator.type.toAsmType(), CHUNK_LOADER_FIELD_NAME, CHUNK_LOADER_FIELD_TYPE)
+    if (isIndexed) {
+      // Every string id needs the offset table, so it's loaded eagerly.
+      pushTable(stringRegistry.getOffsetChunks())
+    } else {
+      push(null as String?)
+    }
+    pushStringCache()
+    invokeStatic(POOL_FIELD_TYPE, METHOD_POOL_CREATE)
+  }
+
+  private fun getPoolFormat(): Int {
+    var format = when (stringEncoding) {
+      StringEncoding.UTF16 -> if (isCounter && !poolPacking) StringPool.FORMAT_COUNTER else 0
+      StringEncoding.SEVEN_BIT -> StringPool.FORMAT_SEVEN_BIT
+      StringEncoding.DEFLATE -> StringPool.FORMAT_DEFLATE
+    }
+    if (poolPacking) {
+      format = format or StringPool.FORMAT_PACKED
+    }
+    return format
+  }
+
+  private fun GeneratorAdapter.pushStringCache() {
+    if (stringCachePolicy == StringCachePolicy.None) {
+      push(null as String?)
+    } else {
+      newStringCache()
+    }
+  }
+
+  private fun GeneratorAdapter.newStringAccessRecorder(recordedStrings: Map<Long, String>) {
+    // Every id is followed by a key of its string, which doesn't depend on where the string is stored.
+    val table = recordedStrings.flatMap { (id, string) -> listOf(id, getStringKey(string)) }
+    newInstance(RECORDER_FIELD_TYPE)
+    dup()
+    push(deobfuscator.type.className)
+    pushTable(encodeLongTable(table))
+    push(recordedStrings.size)
+    invokeConstructor(RECORDER_FIELD_TYPE, METHOD_RECORDER_CONSTRUCTOR)
+  }
+
+  private fun GeneratorAdapter.pushTable(chunks: List<String>) {
+    push(chunks.size)
+    newArray(STRING_TYPE)
+    chunks.forEachIndexed { index, chunk ->
+      dup()
+      push(index)
+      push(chunk)
+      arrayStore(STRING_TYPE)
+    }
+  }
+
+  private fun GeneratorAdapter.recordAccess(idArgument: Int) {
+    if (recordedStrings == null) {
+      return
+    }
+
+    getStatic(deobfuscator.type.toAsmType(), RECORDER_FIELD_NAME, RECORDER_FIELD_TYPE)
+    loadArg(idArgument)
+    if (isIndexed) {
+      cast(Type.INT_TYPE, Type.LONG_TYPE)
+    }
+    invokeVirtual(RECORDER_FIELD_TYPE, METHOD_RECORDER_RECORD)
+  }
+
+  private fun GeneratorAdapter.newStringCache() {
+    val (cacheType, capacity) = when (stringCachePolicy) {
+      StringCachePolicy.None -> error("Cannot create a cache for $stringCachePolicy")
+      StringCachePolicy.Unbounded -> {
+        // Indexed ids are dense, so they can index an array directly.
+        val cacheType = if (isIndexed) ARRAY_STRING_CACHE_TYPE else UNBOUNDED_STRING_CACHE_TYPE
+        cacheType to stringRegistry.getStringCount()
       }
-      pop()
+      is StringCachePolicy.Lru -> LRU_STRING_CACHE_TYPE to stringCachePolicy.capacity
+      StringCachePolicy.Soft -> SOFT_STRING_CACHE_TYPE to stringRegistry.getStringCount()
     }
+
+    newInstance(cacheType.toAsmType())
+    dup()
+    push(capacity)
+    invokeConstructor(cacheType.toAsmType(), METHOD_CACHE_CONSTRUCTOR)
   }
 
   private fun ClassVisitor.generateDefaultConstructor() {
@@ -90,11 +255,146 @@ class DeobfuscatorGenerator(
     }
   }
 
+  private fun ClassVisitor.generateLoadChunkMethod() {
+    // Every chunk is pushed by its own ldc, which resolves the string constant only when it's executed for the
+    // first time. This way a string lookup materializes only the chunks the string spans.
+    newMethod(Opcodes.ACC_PUBLIC, METHOD_LOAD_CHUNK) {
+      val chunks = stringRegistry.getAllChunks()
+      loadArg(0)
+      tableSwitch(
+        IntArray(chunks.size) { it },
+        object : TableSwitchGenerator {
+          override fun generateCase(key: Int, end: Label) {
+            push(chunks[key])
+            returnValue()
+          }
+
+          override fun generateDefault() {
+            throwException(ILLEGAL_ARGUMENT_EXCEPTION_TYPE, "Invalid chunk index")
+          }
+        }
+      )
+      // Unreachable, but newMethod() terminates the method with a return instruction that needs a value.
+      push(null as String?)
+    }
+  }
+
   private fun ClassVisitor.generateGetStringMethod() {
     newMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, deobfuscator.deobfuscationMethod) {
+      recordAccess(0)
+      loadPoolAndId(0)
+      invokeVirtual(POOL_FIELD_TYPE, METHOD_POOL_GET_STRING)
+    }
+  }
+
+  private fun ClassVisitor.generateEqualsMethods() {
+    newMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, deobfuscator.equalsMethod) {
+      val stringLabel = newLabel()
+      loadArg(1)
+      instanceOf(STRING_TYPE)
+      ifZCmp(GeneratorAdapter.NE, stringLabel)
+      push(false)
+      returnValue()
+      mark(stringLabel)
+      recordAccess(0)
+      loadPoolAndId(0)
+      loadArg(1)
+      checkCast(CHAR_SEQUENCE_TYPE)
+      invokeVirtual(POOL_FIELD_TYPE, METHOD_POOL_EQUALS)
+    }
+
+    newMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, deobfuscator.contentEqualsMethod) {
+      // The pool returns false for null.
+      recordAccess(0)
+      loadPoolAndId(0)
+      loadArg(1)
+      invokeVirtual(POOL_FIELD_TYPE, METHOD_POOL_EQUALS)
+    }
+  }
+
+  private fun ClassVisitor.generateAppendMethod() {
+    newMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, deobfuscator.appendMethod) {
+      recordAccess(1)
+      loadPoolAndId(1)
       loadArg(0)
-      getStatic(deobfuscator.type.toAsmType(), CHUNKS_FIELD_NAME, CHUNKS_FIELD_TYPE)
-      invokeStatic(DEOBFUSCATOR_HELPER_TYPE.toAsmType(), METHOD_GET_STRING)
+      invokeVirtual(POOL_FIELD_TYPE, METHOD_POOL_APPEND_TO)
+    }
+  }
+
+  private fun ClassVisitor.generateBufferMethods() {
+    newMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, deobfuscator.lengthMethod) {
+      recordAccess(0)
+      loadPoolAndId(0)
+      invokeVirtual(POOL_FIELD_TYPE, METHOD_POOL_LENGTH)
+    }
+
+    newMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, deobfuscator.getCharsMethod) {
+      recordAccess(0)
+      loadPoolAndId(0)
+      loadArg(1)
+      loadArg(2)
+      invokeVirtual(POOL_FIELD_TYPE, METHOD_POOL_GET_CHARS)
+    }
+  }
+
+  private fun ClassVisitor.generateWarmUpMethod() {
+    // Strings that don't fit into a bounded cache would only evict each other.
+    val ids = when (stringCachePolicy) {
+      is StringCachePolicy.Lru -> warmUpIds.take(stringCachePolicy.capacity)
+      else -> warmUpIds.toList()
+    }
+    val tableChunks = encodeLongTable(ids)
+
+    newMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, deobfuscator.warmUpMethod) {
+      val tableLocal = newLocal(TABLE_TYPE)
+      pushTable(tableChunks)
+      storeLocal(tableLocal)
+
+      val indexLocal = newLocal(Type.INT_TYPE)
+      val loopLabel = newLabel()
+      val endLabel = newLabel()
+      push(0)
+      storeLocal(indexLocal)
+      mark(loopLabel)
+      loadLocal(indexLocal)
+      push(ids.size)
+      ifICmp(GeneratorAdapter.GE, endLabel)
+      loadLocal(tableLocal)
+      loadLocal(indexLocal)
+      invokeStatic(DEOBFUSCATOR_HELPER_TYPE.toAsmType(), METHOD_HELPER_GET_TABLE_ENTRY)
+      if (isIndexed) {
+        cast(Type.LONG_TYPE, Type.INT_TYPE)
+      }
+      invokeStatic(deobfuscator.type.toAsmType(), deobfuscator.deobfuscationMethod)
+      pop()
+      iinc(indexLocal, 1)
+      goTo(loopLabel)
+      mark(endLabel)
+    }
+  }
+
+  private fun ClassVisitor.generateReaderMethod() {
+    newMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, deobfuscator.readerMethod) {
+      recordAccess(0)
+      loadPoolAndId(0)
+      invokeVirtual(POOL_FIELD_TYPE, METHOD_POOL_GET_READER)
+    }
+  }
+
+  private fun ClassVisitor.generateGetStringsMethod() {
+    newMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, deobfuscator.bulkDeobfuscationMethod) {
+      loadPoolAndId(0)
+      loadArg(1)
+      invokeVirtual(POOL_FIELD_TYPE, METHOD_POOL_GET_STRINGS)
+    }
+  }
+
+  // Indexed ids are ints, so they're widened to the ids the pool takes.
+  private fun GeneratorAdapter.loadPoolAndId(idArgument: Int) {
+    getStatic(deobfuscator.type.toAsmType(), POOL_FIELD_NAME, POOL_FIELD_TYPE)
+    loadArg(idArgument)
+    if (isIndexed) {
+      cast(Type.INT_TYPE, Type.LONG_TYPE)
     }
   }
 
@@ -102,12 +402,46 @@ class DeobfuscatorGenerator(
     private val METHOD_STATIC_INITIALIZER = Method("<clinit>", "()V")
     private val METHOD_DEFAULT_CONSTRUCTOR = Method("<init>", "()V")
 
-    private val METHOD_GET_STRING = Method("getString", "(J[Ljava/lang/String;)Ljava/lang/String;")
+    private val METHOD_LOAD_CHUNK = Method("loadChunk", "(I)Ljava/lang/String;")
+    private val METHOD_CACHE_CONSTRUCTOR = Method("<init>", "(I)V")
+    private val METHOD_HELPER_GET_TABLE_ENTRY = Method("getTableEntry", "([Ljava/lang/String;I)J")
+    private val METHOD_RECORDER_CONSTRUCTOR = Method("<init>", "(Ljava/lang/String;[Ljava/lang/String;I)V")
+    private val METHOD_RECORDER_RECORD = Method("record", "(J)V")
+    private val METHOD_POOL_CREATE = Method(
+      "create",
+      "(II[Ljava/lang/String;${CHUNK_LOADER_TYPE.descriptor}[Ljava/lang/String;${STRING_CACHE_TYPE.descriptor})" +
+        STRING_POOL_TYPE.descriptor
+    )
+    private val METHOD_POOL_CREATE_DECODED = Method(
+      "create",
+      "(${STRING_DECODER_TYPE.descriptor}[Ljava/lang/String;${CHUNK_LOADER_TYPE.descriptor}" +
+        "${STRING_CACHE_TYPE.descriptor})${STRING_POOL_TYPE.descriptor}"
+    )
+    private val METHOD_POOL_GET_STRING = Method("getString", "(J)Ljava/lang/String;")
+    private val METHOD_POOL_GET_STRINGS = Method("getStrings", "(JI)[Ljava/lang/String;")
+    private val METHOD_POOL_EQUALS = Method("equals", "(JLjava/lang/CharSequence;)Z")
+    private val METHOD_POOL_APPEND_TO = Method("appendTo", "(JLjava/lang/StringBuilder;)Ljava/lang/StringBuilder;")
+    private val METHOD_POOL_LENGTH = Method("length", "(J)I")
+    private val METHOD_POOL_GET_CHARS = Method("getChars", "(J[CI)I")
+    private val METHOD_POOL_GET_READER = Method("getReader", "(J)Ljava/io/Reader;")
 
     private val TYPE_OBJECT = Type.getObjectType("java/lang/Object")
+    private val STRING_TYPE = Type.getObjectType("java/lang/String")
+    private val CHAR_SEQUENCE_TYPE = Type.getObjectType("java/lang/CharSequence")
+    private val TABLE_TYPE = Type.getType("[Ljava/lang/String;")
+    private val ILLEGAL_ARGUMENT_EXCEPTION_TYPE = Type.getObjectType("java/lang/IllegalArgumentException")
 
     private const val CHUNKS_FIELD_NAME = "chunks"
     private val CHUNKS_FIELD_TYPE = Type.getType("[Ljava/lang/String;")
     private val CHUNKS_ELEMENT_TYPE = CHUNKS_FIELD_TYPE.elementType
+
+    private const val CHUNK_LOADER_FIELD_NAME = "chunkLoader"
+    private val CHUNK_LOADER_FIELD_TYPE = CHUNK_LOADER_TYPE.toAsmType()
+
+    private const val POOL_FIELD_NAME = "pool"
+    private val POOL_FIELD_TYPE = STRING_POOL_TYPE.toAsmType()
+
+    private const val RECORDER_FIELD_NAME = "recorder"
+    private val RECORDER_FIELD_TYPE = STRING_ACCESS_RECORDER_TYPE.toAsmType()
   }
 }
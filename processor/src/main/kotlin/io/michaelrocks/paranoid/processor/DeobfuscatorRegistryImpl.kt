@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.mirrors.Type
+import io.michaelrocks.paranoid.processor.model.ObfuscationTier
+import io.michaelrocks.paranoid.processor.model.ShardingPolicy
+
+class DeobfuscatorRegistryImpl(
+  private val shardingPolicy: ShardingPolicy,
+  private val tiersByType: Map<Type.Object, ObfuscationTier> = emptyMap(),
+  shardFactory: (index: Int, tier: ObfuscationTier) -> DeobfuscatorShard
+) : DeobfuscatorRegistry {
+
+  private val packagePrefixes = when (shardingPolicy) {
+    is ShardingPolicy.ByPackage -> shardingPolicy.packagePrefixes.map { it.replace('.', '/').trimEnd('/') }
+    else -> emptyList()
+  }
+
+  // Every tier other than the default one gets a single shard of its own that follows the regular shards.
+  private val tiers = tiersByType.values.filter { it != ObfuscationTier.DEFAULT }.distinct().sorted()
+
+  override val shards = List(getShardCount() + tiers.size) { index ->
+    shardFactory(index, tiers.getOrElse(index - getShardCount()) { ObfuscationTier.DEFAULT })
+  }
+
+  override fun getShard(type: Type.Object): DeobfuscatorShard {
+    val tier = tiersByType[type] ?: ObfuscationTier.DEFAULT
+    if (tier != ObfuscationTier.DEFAULT) {
+      return shards[getShardCount() + tiers.indexOf(tier)]
+    }
+    return shards[getShardIndex(type.internalName.substringBeforeLast('/', ""))]
+  }
+
+  private fun getShardCount(): Int {
+    return when (shardingPolicy) {
+      ShardingPolicy.None -> 1
+      // The first shard is reserved for classes that don't match any prefix.
+      is ShardingPolicy.ByPackage -> shardingPolicy.packagePrefixes.size + 1
+      is ShardingPolicy.ByCount -> shardingPolicy.shardCount
+    }
+  }
+
+  private fun getShardIndex(packageName: String): Int {
+    return when (shardingPolicy) {
+      ShardingPolicy.None -> 0
+      is ShardingPolicy.ByPackage -> findLongestPackagePrefixIndex(packageName) + 1
+      // Classes of a package always share a shard, so a feature pays only for its own strings.
+      is ShardingPolicy.ByCount -> Math.floorMod(packageName.hashCode(), shardingPolicy.shardCount)
+    }
+  }
+
+  private fun findLongestPackagePrefixIndex(packageName: String): Int {
+    var result = -1
+    packagePrefixes.forEachIndexed { index, prefix ->
+      val matches = prefix.isEmpty() || packageName == prefix || packageName.startsWith("$prefix/")
+      if (matches && (result == -1 || packagePrefixes[result].length < prefix.length)) {
+        result = index
+      }
+    }
+    return result
+  }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import io.michaelrocks.paranoid.processor.model.Deobfuscator
+import io.michaelrocks.paranoid.processor.model.ObfuscationTier
+
+data class DeobfuscatorShard(
+  val deobfuscator: Deobfuscator,
+  val stringRegistry: StringRegistry,
+  val tier: ObfuscationTier = ObfuscationTier.DEFAULT,
+  // Strings to warm up by their ids, in the order they've been registered.
+  val warmUpStrings: MutableMap<Long, String> = LinkedHashMap(),
+  // Strings by their ids if accesses to strings are recorded or null otherwise.
+  val recordedStrings: MutableMap<Long, String>? = null
+)
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.mirrors.toAsmType
+import org.objectweb.asm.commons.GeneratorAdapter
+import org.objectweb.asm.commons.Method
+
+class FastStringCodec : StringCodec {
+  override fun createStringRegistry(seed: Int): StringRegistry {
+    return FastStringRegistry(seed)
+  }
+
+  override fun newStringDecoder(generator: GeneratorAdapter, seed: Int) {
+    generator.newInstance(FAST_STRING_DECODER_TYPE.toAsmType())
+    generator.dup()
+    generator.invokeConstructor(FAST_STRING_DECODER_TYPE.toAsmType(), METHOD_DEFAULT_CONSTRUCTOR)
+  }
+
+  companion object {
+    private val METHOD_DEFAULT_CONSTRUCTOR = Method("<init>", "()V")
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import io.michaelrocks.paranoid.DeobfuscatorHelper
+import io.michaelrocks.paranoid.FastStringDecoder
+
+class FastStringRegistry(seed: Int) : StringRegistry {
+  private val key = seed.toLong() and 0xffff_ffffL
+  private val builder = StringBuilder()
+  private val idsByString = HashMap<String, Long>()
+  private var duplicateStringCount = 0
+  private var duplicateStringLength = 0L
+
+  override fun registerString(string: String): Long {
+    val existingId = idsByString[string]
+    if (existingId != null) {
+      duplicateStringCount += 1
+      duplicateStringLength += string.length
+      return existingId
+    }
+
+    val id = (builder.length.toLong() shl 32) or key
+    appendChar(string.length)
+    string.forEach { appendChar(it.code) }
+    idsByString[string] = id
+    return id
+  }
+
+  override fun registerStrings(strings: List<String>): Long? {
+    return null
+  }
+
+  private fun appendChar(char: Int) {
+    builder.append((char xor FastStringDecoder.getCharKey(key.toInt(), builder.length).code).toChar())
+  }
+
+  override fun getStringCount(): Int {
+    return idsByString.size
+  }
+
+  override fun getRegisteredStrings(): Collection<String> {
+    return idsByString.keys
+  }
+
+  override fun getDuplicateStringCount(): Int {
+    return duplicateStringCount
+  }
+
+  override fun getDuplicateStringLength(): Long {
+    return duplicateStringLength
+  }
+
+  override fun getSharedStringLength(): Long {
+    return 0L
+  }
+
+  override fun getAllChunks(): List<String> {
+    return builder.toString().chunked(DeobfuscatorHelper.MAX_CHUNK_LENGTH)
+  }
+
+  override fun getOffsetChunks(): List<String> {
+    return emptyList()
+  }
+}
@@ -17,6 +17,7 @@
 package io.michaelrocks.paranoid.processor
 
 import com.joom.grip.mirrors.Type
+import io.michaelrocks.paranoid.processor.model.ObfuscationTier
 
 data class AnalysisResult(
   val configurationsByType: Map<Type.Object, ClassConfiguration>
@@ -24,5 +25,6 @@ data class AnalysisResult(
 
 data class ClassConfiguration(
   val container: Type.Object,
-  val constantStringsByFieldName: Map<String, String>
+  val constantStringsByFieldName: Map<String, String>,
+  val tier: ObfuscationTier = ObfuscationTier.DEFAULT
 )
@@ -17,7 +17,9 @@
 package io.michaelrocks.paranoid.processor
 
 import com.joom.grip.mirrors.Type
+import io.michaelrocks.paranoid.processor.model.ObfuscationTier
 
 interface ObfuscatedTypeRegistry {
   fun shouldObfuscate(type: Type.Object): Boolean
+  fun getObfuscationTier(type: Type.Object): ObfuscationTier
 }
@@ -18,8 +18,10 @@ package io.michaelrocks.paranoid.processor
 
 import com.joom.grip.ClassRegistry
 import com.joom.grip.mirrors.ClassMirror
+import com.joom.grip.mirrors.EnumMirror
 import com.joom.grip.mirrors.Type
 import com.joom.grip.mirrors.getObjectTypeByInternalName
+import io.michaelrocks.paranoid.processor.model.ObfuscationTier
 
 class ObfuscatedTypeRegistryImpl(
   private val classRegistry: ClassRegistry
@@ -34,6 +36,18 @@ class ObfuscatedTypeRegistryImpl(
     return mirror.enclosingType?.let { shouldObfuscate(it) } ?: false
   }
 
+  override fun getObfuscationTier(type: Type.Object): ObfuscationTier {
+    // A nested class uses the tier of the closest annotated class.
+    val mirror = findClassMirror(type) ?: return ObfuscationTier.DEFAULT
+    val annotation = mirror.annotations[OBFUSCATE_TYPE]
+    if (annotation != null) {
+      val tier = annotation.values[TIER_PARAMETER_NAME] as? EnumMirror ?: return ObfuscationTier.DEFAULT
+      return ObfuscationTier.valueOf(tier.value)
+    }
+
+    return mirror.enclosingType?.let { getObfuscationTier(it) } ?: ObfuscationTier.DEFAULT
+  }
+
   private fun findClassMirror(type: Type.Object): ClassMirror? {
     return try {
       classRegistry.getClassMirror(type)
@@ -52,4 +66,8 @@ class ObfuscatedTypeRegistryImpl(
 
     return getObjectTypeByInternalName(outerInternalName)
   }
+
+  companion object {
+    private const val TIER_PARAMETER_NAME = "tier"
+  }
 }
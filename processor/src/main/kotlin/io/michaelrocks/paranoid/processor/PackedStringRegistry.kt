@@ -0,0 +1,215 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid.processor
+
+import io.michaelrocks.paranoid.DeobfuscatorHelper
+import io.michaelrocks.paranoid.processor.model.StringEncoding
+import java.util.SortedSet
+
+class PackedStringRegistry(
+  private val seed: Int,
+  strings: Collection<String>,
+  private val encoding: StringEncoding = StringEncoding.UTF16
+) : StringRegistry {
+
+  private val idsByString = HashMap<String, Long>()
+  private val registeredStrings = HashSet<String>()
+  private var duplicateStringCount = 0
+  private var duplicateStringLength = 0L
+  private var sharedStringLength = 0L
+  private val units = ArrayList<Int>()
+
+  init {
+    pack(strings.toSortedSet())
+  }
+
+  override fun registerString(string: String): Long {
+    val id = idsByString[string] ?: error("String hasn't been packed: $string")
+    if (!registeredStrings.add(string)) {
+      duplicateStringCount += 1
+      duplicateStringLength += string.length
+    }
+    return id
+  }
+
+  override fun registerStrings(strings: List<String>): Long? {
+    // Packed strings don't have length headers, so they can't be decoded one after another.
+    return null
+  }
+
+  override fun getStringCount(): Int {
+    return idsByString.size
+  }
+
+  override fun getRegisteredStrings(): Collection<String> {
+    return registeredStrings
+  }
+
+  override fun getDuplicateStringCount(): Int {
+    return duplicateStringCount
+  }
+
+  override fun getDuplicateStringLength(): Long {
+    return duplicateStringLength
+  }
+
+  override fun getSharedStringLength(): Long {
+    return sharedStringLength
+  }
+
+  override fun getAllChunks(): List<String> {
+    return chunks
+  }
+
+  // The pool doesn't change after it's packed, so it's encoded and compressed only once.
+  private val chunks by lazy {
+    when (encoding) {
+      StringEncoding.UTF16,
+      StringEncoding.SEVEN_BIT -> {
+        val unitMask = if (encoding == StringEncoding.UTF16) 0xffff else DeobfuscatorHelper.SEVEN_BIT_UNIT_MASK
+        val pool = StringBuilder(units.size)
+        units.forEachIndexed { index, unit ->
+          pool.append(((unit xor DeobfuscatorHelper.getPackedUnitKey(seed, index)) and unitMask).toChar())
+        }
+        pool.toString().chunked(DeobfuscatorHelper.MAX_CHUNK_LENGTH)
+      }
+      StringEncoding.DEFLATE -> {
+        val pool = StringBuilder(units.size)
+        units.forEach { pool.append(it.toChar()) }
+        pool.toString().chunked(DeobfuscatorHelper.DEFLATE_BLOCK_LENGTH).mapIndexed { index, block ->
+          deflateBlock(seed.toLong() and 0xffff_ffffL, index, block)
+        }
+      }
+    }
+  }
+
+  override fun getOffsetChunks(): List<String> {
+    return emptyList()
+  }
+
+  private fun pack(strings: SortedSet<String>) {
+    val placements = HashMap<String, Placement>()
+    coverPrefixes(strings, placements)
+    coverSuffixes(strings, placements)
+
+    val roots = strings.filter { it !in placements }
+    val text = chainRoots(roots, placements)
+    val unitIndices = encodeUnits(text)
+
+    val idMask = DeobfuscatorHelper.getPackedIdMask(seed)
+    strings.forEach { string ->
+      val charIndex = resolveCharIndex(string, placements)
+      val unpackedId = (string.length.toLong() shl 32) or unitIndices[charIndex].toLong()
+      idsByString[string] = unpackedId xor idMask
+    }
+
+    sharedStringLength = strings.sumOf { it.length.toLong() } - text.length
+  }
+
+  // In sorted order a string that is a prefix of any other string is a prefix of the next one.
+  private fun coverPrefixes(strings: SortedSet<String>, placements: MutableMap<String, Placement>) {
+    strings.zipWithNext { string, next ->
+      if (next.startsWith(string)) {
+        placements[string] = Placement(next, 0)
+      }
+    }
+  }
+
+  private fun coverSuffixes(strings: Set<String>, placements: MutableMap<String, Placement>) {
+    strings.sortedBy { it.reversed() }.zipWithNext { string, next ->
+      if (string !in placements && next.endsWith(string)) {
+        placements[string] = Placement(next, next.length - string.length)
+      }
+    }
+  }
+
+  // Greedily appends a string whose prefix matches the suffix of the last appended string.
+  private fun chainRoots(roots: List<String>, placements: MutableMap<String, Placement>): String {
+    val rootsByPrefix = HashMap<String, ArrayDeque<String>>()
+    roots.forEach { root ->
+      for (length in 1..minOf(MAX_OVERLAP_LENGTH, root.length - 1)) {
+        rootsByPrefix.getOrPut(root.substring(0, length)) { ArrayDeque() } += root
+      }
+    }
+
+    val text = StringBuilder()
+    val placedRoots = HashSet<String>()
+    roots.sortedByDescending { it.length }.forEach { root ->
+      if (placedRoots.add(root)) {
+        placements[root] = Placement(null, text.length)
+        text.append(root)
+
+        var last = root
+        while (true) {
+          val (next, overlap) = findNextRoot(last, rootsByPrefix, placedRoots) ?: break
+          placedRoots += next
+          placements[next] = Placement(null, text.length - overlap)
+          text.append(next, overlap, next.length)
+          last = next
+        }
+      }
+    }
+    return text.toString()
+  }
+
+  private fun findNextRoot(
+    last: String,
+    rootsByPrefix: Map<String, ArrayDeque<String>>,
+    placedRoots: Set<String>
+  ): Pair<String, Int>? {
+    for (overlap in minOf(MAX_OVERLAP_LENGTH, last.length) downTo 1) {
+      val candidates = rootsByPrefix[last.substring(last.length - overlap)] ?: continue
+      while (candidates.isNotEmpty() && candidates.first() in placedRoots) {
+        candidates.removeFirst()
+      }
+      if (candidates.isNotEmpty()) {
+        return candidates.first() to overlap
+      }
+    }
+    return null
+  }
+
+  private fun resolveCharIndex(string: String, placements: Map<String, Placement>): Int {
+    var charIndex = 0
+    var placement = placements.getValue(string)
+    while (true) {
+      charIndex += placement.offset
+      placement = placements.getValue(placement.parent ?: return charIndex)
+    }
+  }
+
+  private fun encodeUnits(text: String): IntArray {
+    val unitIndices = IntArray(text.length + 1)
+    text.forEachIndexed { index, char ->
+      unitIndices[index] = units.size
+      when (encoding) {
+        StringEncoding.UTF16 -> units += char.code
+        StringEncoding.SEVEN_BIT,
+        StringEncoding.DEFLATE -> units.addSevenBitUnits(char.code)
+      }
+    }
+    unitIndices[text.length] = units.size
+    return unitIndices
+  }
+
+  private class Placement(val parent: String?, val offset: Int)
+
+  companion object {
+    private const val MAX_OVERLAP_LENGTH = 32
+  }
+}
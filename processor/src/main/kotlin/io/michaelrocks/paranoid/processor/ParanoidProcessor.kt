@@ -22,12 +22,22 @@ import com.joom.grip.io.DirectoryFileSink
 import com.joom.grip.io.IoFactory
 import com.joom.grip.mirrors.getObjectTypeByInternalName
 import io.michaelrocks.paranoid.processor.commons.closeQuietly
+import io.michaelrocks.paranoid.processor.commons.getModifiedUtf8Length
 import io.michaelrocks.paranoid.processor.logging.getLogger
+import io.michaelrocks.paranoid.processor.model.CipherMode
 import io.michaelrocks.paranoid.processor.model.Deobfuscator
+import io.michaelrocks.paranoid.processor.model.ObfuscationTier
+import io.michaelrocks.paranoid.processor.model.PoolLayout
+import io.michaelrocks.paranoid.processor.model.ShardingPolicy
+import io.michaelrocks.paranoid.processor.model.StringCachePolicy
+import io.michaelrocks.paranoid.processor.model.StringEncoding
+import io.michaelrocks.paranoid.processor.model.StringIdFormat
 import org.objectweb.asm.Opcodes
 import org.objectweb.asm.Type
 import org.objectweb.asm.commons.Method
 import java.io.File
+import java.io.Reader
+import java.util.concurrent.TimeUnit
 
 class ParanoidProcessor(
   private val obfuscationSeed: Int,
@@ -37,13 +47,36 @@ class ParanoidProcessor(
   private val classpath: Collection<File>,
   private val bootClasspath: Collection<File>,
   private val projectName: String,
+  private val stringCachePolicy: StringCachePolicy = StringCachePolicy.None,
+  private val cacheLiterals: Boolean = false,
+  private val shardingPolicy: ShardingPolicy = ShardingPolicy.None,
+  private val stringEncoding: StringEncoding = StringEncoding.UTF16,
+  private val poolPacking: Boolean = false,
+  private val poolLayout: PoolLayout = PoolLayout.None,
+  private val lazyConstants: Boolean = false,
+  private val stringIdFormat: StringIdFormat = StringIdFormat.MASKED,
+  private val cipherMode: CipherMode = CipherMode.CHAINED,
+  private val stringCodecs: Map<ObfuscationTier, StringCodec> = DEFAULT_STRING_CODECS,
+  private val warmUpClasses: Collection<String> = emptyList(),
+  private val recordStringAccess: Boolean = false,
+  private val stringAccessProfile: File? = null,
+  private val hotStringThreshold: Long = DEFAULT_HOT_STRING_THRESHOLD,
+  private val warmUpWindowMillis: Long = DEFAULT_WARM_UP_WINDOW_MILLIS,
   private val asmApi: Int = Opcodes.ASM9,
 ) {
 
   private val logger = getLogger()
 
   private val grip: Grip = GripFactory.newInstance(asmApi).create(inputs + classpath + bootClasspath)
-  private val stringRegistry = StringRegistryImpl(obfuscationSeed)
+
+  private val accessProfile by lazy { stringAccessProfile?.let { StringAccessProfile.read(it) } }
+
+  private val warmUpTypes = warmUpClasses.mapTo(HashSet()) { getObjectTypeByInternalName(it.replace('.', '/')) }
+  // Warm-up keeps decoded strings in the cache, so without a cache strings of a profile aren't warmed up.
+  private val shouldWarmUpStartupStrings = stringAccessProfile != null && stringCachePolicy != StringCachePolicy.None
+  private val warmUpType = if (warmUpTypes.isEmpty() && !shouldWarmUpStartupStrings) null else {
+    getObjectTypeByInternalName("io/michaelrocks/paranoid/DeobfuscatorWarmUp${composeDeobfuscatorNameSuffix()}")
+  }
 
   fun process() {
     dumpConfiguration()
@@ -51,25 +84,70 @@ class ParanoidProcessor(
     require(inputs.size == outputs.size) {
       "Input collection $inputs and output collection $outputs have different sizes"
     }
+    require(!poolPacking || stringIdFormat == StringIdFormat.MASKED) {
+      "A packed pool doesn't support the $stringIdFormat string id format"
+    }
+    require(!recordStringAccess || stringAccessProfile == null) {
+      "A string access profile cannot be applied to a build that records string access"
+    }
+    require(warmUpTypes.isEmpty() || stringCachePolicy != StringCachePolicy.None) {
+      "Warm-up requires a string cache to keep decoded strings"
+    }
+    require(cipherMode == CipherMode.CHAINED || (stringEncoding == StringEncoding.UTF16 && !poolPacking)) {
+      "The $cipherMode cipher mode is supported only by an unpacked pool with the ${StringEncoding.UTF16} encoding"
+    }
+
+    if (stringAccessProfile != null && !shouldWarmUpStartupStrings) {
+      logger.warn("Strings of the access profile aren't warmed up, because there's no string cache to keep them")
+    }
 
     val analysisResult = Analyzer(grip).analyze(inputs)
     analysisResult.dump()
 
-    val deobfuscator = createDeobfuscator()
-    logger.info("Prepare to generate {}", deobfuscator)
+    val deobfuscatorRegistry = createDeobfuscatorRegistry(analysisResult)
+
+    deobfuscatorRegistry.shards.forEach { shard ->
+      logger.info("Prepare to generate {}", shard.deobfuscator)
+    }
 
     val sourcesAndSinks = inputs.zip(outputs) { input, output ->
       IoFactory.createFileSource(input) to IoFactory.createFileSink(input, output)
     }
 
     try {
-      Patcher(deobfuscator, stringRegistry, analysisResult, grip.classRegistry, asmApi)
-        .copyAndPatchClasses(sourcesAndSinks)
+      createPatcher(deobfuscatorRegistry, analysisResult).copyAndPatchClasses(sourcesAndSinks)
       DirectoryFileSink(genPath).use { sink ->
-        val deobfuscatorBytes = DeobfuscatorGenerator(deobfuscator, stringRegistry, grip.classRegistry)
-          .generateDeobfuscator()
-        sink.createFile("${deobfuscator.type.internalName}.class", deobfuscatorBytes)
+        deobfuscatorRegistry.shards.forEach { (deobfuscator, stringRegistry, tier, warmUpStrings, recordedStrings) ->
+          // A tier with a codec encodes strings its own way regardless of how the pool is configured.
+          val stringCodec = stringCodecs[tier]
+          val deobfuscatorBytes =
+            DeobfuscatorGenerator(
+              deobfuscator,
+              stringRegistry,
+              grip.classRegistry,
+              stringCachePolicy,
+              if (stringCodec == null) stringEncoding else StringEncoding.UTF16,
+              obfuscationSeed,
+              poolPacking && stringCodec == null,
+              if (stringCodec == null) cipherMode else CipherMode.CHAINED,
+              stringCodec,
+              getWarmUpIds(warmUpStrings),
+              recordedStrings
+            ).generateDeobfuscator()
+          sink.createFile("${deobfuscator.type.internalName}.class", deobfuscatorBytes)
+          stringRegistry.dumpStatistics(deobfuscator)
+        }
+
+        if (warmUpType != null) {
+          val shards = deobfuscatorRegistry.shards
+          val deobfuscators = shards.filter { it.warmUpStrings.isNotEmpty() }.map { it.deobfuscator }
+          logger.info("Warm up {} strings", shards.sumOf { it.warmUpStrings.size })
+          val warmUpBytes = WarmUpGenerator(warmUpType, deobfuscators, grip.classRegistry).generateWarmUp()
+          sink.createFile("${warmUpType.internalName}.class", warmUpBytes)
+        }
       }
+
+      dumpHotStrings(deobfuscatorRegistry.shards)
     } finally {
       sourcesAndSinks.forEach { (source, sink) ->
         source.closeQuietly()
@@ -86,6 +164,20 @@ class ParanoidProcessor(
     logger.info("  classpath     = {}", classpath)
     logger.info("  bootClasspath = {}", bootClasspath)
     logger.info("  projectName   = {}", projectName)
+    logger.info("  stringCache   = {}", stringCachePolicy)
+    logger.info("  cacheLiterals = {}", cacheLiterals)
+    logger.info("  sharding      = {}", shardingPolicy)
+    logger.info("  encoding      = {}", stringEncoding)
+    logger.info("  poolPacking   = {}", poolPacking)
+    logger.info("  poolLayout    = {}", poolLayout)
+    logger.info("  lazyConstants = {}", lazyConstants)
+    logger.info("  idFormat      = {} (version {})", stringIdFormat, stringIdFormat.version)
+    logger.info("  cipherMode    = {}", cipherMode)
+    logger.info("  warmUp        = {}", warmUpClasses)
+    logger.info("  recordAccess  = {}", recordStringAccess)
+    logger.info("  accessProfile = {}", stringAccessProfile)
+    logger.info("  hotThreshold  = {}", hotStringThreshold)
+    logger.info("  warmUpWindow  = {} ms", warmUpWindowMillis)
   }
 
   private fun AnalysisResult.dump() {
@@ -95,7 +187,7 @@ class ParanoidProcessor(
       logger.info("Classes to obfuscate:")
       configurationsByType.forEach {
         val (type, configuration) = it
-        logger.info("  {}:", type.internalName)
+        logger.info("  {} ({}):", type.internalName, configuration.tier)
         configuration.constantStringsByFieldName.forEach {
           val (field, string) = it
           logger.info("    {} = \"{}\"", field, string)
@@ -104,11 +196,171 @@ class ParanoidProcessor(
     }
   }
 
-  private fun createDeobfuscator(): Deobfuscator {
-    val deobfuscatorInternalName = "io/michaelrocks/paranoid/Deobfuscator${composeDeobfuscatorNameSuffix()}"
+  private fun StringRegistry.dumpStatistics(deobfuscator: Deobfuscator) {
+    val chunks = getAllChunks()
+    logger.info("String pool of {}:", deobfuscator.type.internalName)
+    logger.info("  strings    = {}", getStringCount())
+    logger.info("  duplicates = {} ({} chars)", getDuplicateStringCount(), getDuplicateStringLength())
+    logger.info("  shared     = {} chars", getSharedStringLength())
+    logger.info("  chunks     = {}", chunks.size)
+    logger.info("  chars      = {}", chunks.sumOf { it.length })
+    logger.info("  bytes      = {}", chunks.sumOf { it.getModifiedUtf8Length() })
+  }
+
+  private fun createDeobfuscatorRegistry(analysisResult: AnalysisResult): DeobfuscatorRegistry {
+    val tiersByType = analysisResult.configurationsByType.mapValues { it.value.tier }
+    if (!poolPacking && poolLayout == PoolLayout.None && accessProfile == null) {
+      return DeobfuscatorRegistryImpl(shardingPolicy, tiersByType) { index, tier ->
+        createCodecShard(index, tier) ?: run {
+          val stringRegistry =
+            StringRegistryImpl(obfuscationSeed, stringEncoding, idFormat = stringIdFormat, cipherMode = cipherMode)
+          DeobfuscatorShard(createDeobfuscator(index), stringRegistry, recordedStrings = newRecordedStrings())
+        }
+      }
+    }
+
+    // A packed pool or a laid out pool is built when all its strings are known, so they're collected by patching
+    // classes without writing them.
+    val collectors = ArrayList<CollectingStringRegistry>()
+    val collectingRegistry = DeobfuscatorRegistryImpl(shardingPolicy, tiersByType) { index, _ ->
+      DeobfuscatorShard(createDeobfuscator(index), CollectingStringRegistry().also { collectors += it })
+    }
+    val sources = inputs.map { IoFactory.createFileSource(it) }
+    try {
+      createPatcher(collectingRegistry, analysisResult).collectStrings(sources) { type ->
+        collectors.forEach { it.owner = type }
+      }
+    } finally {
+      sources.forEach { it.closeQuietly() }
+    }
+
+    return DeobfuscatorRegistryImpl(shardingPolicy, tiersByType) { index, tier ->
+      createCodecShard(index, tier) ?: run {
+        val strings = collectors[index].getStrings(poolLayout).let { sortByAccessOrder(it) }
+        val stringRegistry = if (poolPacking) {
+          PackedStringRegistry(obfuscationSeed, strings, stringEncoding)
+        } else {
+          StringRegistryImpl(obfuscationSeed, stringEncoding, strings, stringIdFormat, cipherMode)
+        }
+        DeobfuscatorShard(createDeobfuscator(index), stringRegistry, recordedStrings = newRecordedStrings())
+      }
+    }
+  }
+
+  private fun createCodecShard(index: Int, tier: ObfuscationTier): DeobfuscatorShard? {
+    val stringCodec = stringCodecs[tier] ?: return null
+    // Codecs don't support indexed ids, so their deobfuscators always take masked ones.
+    val deobfuscator = createDeobfuscator(index, StringIdFormat.MASKED)
+    val stringRegistry = stringCodec.createStringRegistry(obfuscationSeed)
+    return DeobfuscatorShard(deobfuscator, stringRegistry, tier, recordedStrings = newRecordedStrings())
+  }
+
+  private fun newRecordedStrings(): MutableMap<Long, String>? {
+    return if (recordStringAccess) LinkedHashMap() else null
+  }
+
+  private fun createPatcher(deobfuscatorRegistry: DeobfuscatorRegistry, analysisResult: AnalysisResult): Patcher {
+    val constantAccessorRegistry =
+      if (lazyConstants) ConstantAccessorRegistryImpl(analysisResult, grip.classRegistry) else null
+    return Patcher(
+      deobfuscatorRegistry,
+      analysisResult,
+      grip.classRegistry,
+      ::shouldCacheLiteral,
+      constantAccessorRegistry,
+      // Warm-up would make every string it decodes look accessed, so it does nothing in an instrumented build.
+      if (recordStringAccess) emptySet() else warmUpTypes,
+      warmUpType,
+      if (shouldWarmUpStartupStrings) ::isStartupString else null,
+      asmApi
+    )
+  }
+
+  // Strings accessed by an instrumented build are stored first in the order they've been accessed, so strings used
+  // during startup share chunks and compressed blocks.
+  private fun sortByAccessOrder(strings: Collection<String>): Collection<String> {
+    val profile = accessProfile ?: return strings
+    return strings.sortedBy { profile.findEntry(it)?.order ?: Int.MAX_VALUE }
+  }
+
+  private fun getWarmUpIds(warmUpStrings: Map<Long, String>): Collection<Long> {
+    val profile = accessProfile ?: return warmUpStrings.keys
+    return warmUpStrings.entries.sortedBy { profile.findEntry(it.value)?.order ?: Int.MAX_VALUE }.map { it.key }
+  }
+
+  // Strings accessed long after the recording started aren't needed by the first screen, so they aren't warmed up.
+  private fun isStartupString(string: String): Boolean {
+    val firstAccessNanos = accessProfile?.findEntry(string)?.firstAccessNanos ?: return false
+    return firstAccessNanos <= TimeUnit.MILLISECONDS.toNanos(warmUpWindowMillis)
+  }
+
+  // With a profile only literals that are accessed often enough are worth a field and an accessor of their own.
+  private fun shouldCacheLiteral(string: String): Boolean {
+    return cacheLiterals && (accessProfile == null || isHotString(string))
+  }
+
+  private fun isHotString(string: String): Boolean {
+    val hits = accessProfile?.findEntry(string)?.hits ?: return false
+    return hits >= hotStringThreshold
+  }
+
+  private fun dumpHotStrings(shards: Collection<DeobfuscatorShard>) {
+    val profile = accessProfile ?: return
+    val hotEntries = shards
+      .flatMap { it.stringRegistry.getRegisteredStrings() }
+      .distinct()
+      .mapNotNull { string -> profile.findEntry(string)?.let { string to it } }
+      .filter { (_, entry) -> entry.hits >= hotStringThreshold }
+      .sortedByDescending { it.second.hits }
+    if (hotEntries.isEmpty()) {
+      return
+    }
+
+    logger.warn(
+      "{} strings are accessed at least {} times, so decoding them may be a measurable cost:",
+      hotEntries.size,
+      hotStringThreshold
+    )
+    hotEntries.forEach { (string, entry) ->
+      logger.warn("  {} hits: \"{}\"", entry.hits, string)
+    }
+  }
+
+  private fun createDeobfuscator(shardIndex: Int, stringIdFormat: StringIdFormat = this.stringIdFormat): Deobfuscator {
+    val shardSuffix = if (shardIndex == 0) "" else "\$Shard$shardIndex"
+    val deobfuscatorInternalName = "io/michaelrocks/paranoid/Deobfuscator${composeDeobfuscatorNameSuffix()}$shardSuffix"
     val deobfuscatorType = getObjectTypeByInternalName(deobfuscatorInternalName)
-    val deobfuscationMethod = Method("getString", Type.getType(String::class.java), arrayOf(Type.LONG_TYPE))
-    return Deobfuscator(deobfuscatorType, deobfuscationMethod)
+    val stringIdType = when (stringIdFormat) {
+      StringIdFormat.MASKED -> Type.LONG_TYPE
+      StringIdFormat.INDEXED -> Type.INT_TYPE
+    }
+    val deobfuscationMethod = Method("getString", Type.getType(String::class.java), arrayOf(stringIdType))
+    val bulkDeobfuscationMethod =
+      Method("getStrings", Type.getType(Array<String>::class.java), arrayOf(Type.LONG_TYPE, Type.INT_TYPE))
+    val equalsMethod =
+      Method("stringEquals", Type.BOOLEAN_TYPE, arrayOf(stringIdType, Type.getType(Any::class.java)))
+    val contentEqualsMethod =
+      Method("contentEquals", Type.BOOLEAN_TYPE, arrayOf(stringIdType, Type.getType(CharSequence::class.java)))
+    val stringBuilderType = Type.getType(StringBuilder::class.java)
+    val appendMethod = Method("append", stringBuilderType, arrayOf(stringBuilderType, stringIdType))
+    val readerMethod = Method("getReader", Type.getType(Reader::class.java), arrayOf(stringIdType))
+    val lengthMethod = Method("length", Type.INT_TYPE, arrayOf(stringIdType))
+    val getCharsMethod =
+      Method("getChars", Type.INT_TYPE, arrayOf(stringIdType, Type.getType(CharArray::class.java), Type.INT_TYPE))
+    val warmUpMethod = Method("warmUp", Type.VOID_TYPE, arrayOf())
+    return Deobfuscator(
+      deobfuscatorType,
+      deobfuscationMethod,
+      bulkDeobfuscationMethod,
+      stringIdFormat,
+      equalsMethod,
+      contentEqualsMethod,
+      appendMethod,
+      readerMethod,
+      lengthMethod,
+      getCharsMethod,
+      warmUpMethod
+    )
   }
 
   private fun composeDeobfuscatorNameSuffix(): String {
@@ -119,4 +371,14 @@ class ParanoidProcessor(
       "$$normalizedProjectName"
     }
   }
+
+  companion object {
+    const val DEFAULT_HOT_STRING_THRESHOLD = 100L
+    const val DEFAULT_WARM_UP_WINDOW_MILLIS = 1000L
+
+    val DEFAULT_STRING_CODECS = mapOf(
+      ObfuscationTier.FAST to FastStringCodec(),
+      ObfuscationTier.STRONG to StrongStringCodec()
+    )
+  }
 }
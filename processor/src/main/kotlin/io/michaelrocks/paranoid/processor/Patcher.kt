@@ -22,17 +22,24 @@ import com.joom.grip.io.FileSource
 import com.joom.grip.mirrors.Type
 import com.joom.grip.mirrors.getObjectTypeByInternalName
 import io.michaelrocks.paranoid.processor.logging.getLogger
-import io.michaelrocks.paranoid.processor.model.Deobfuscator
 import org.objectweb.asm.ClassReader
 import org.objectweb.asm.ClassVisitor
 import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.MethodVisitor
 import org.objectweb.asm.Opcodes
 
 class Patcher(
-  private val deobfuscator: Deobfuscator,
-  private val stringRegistry: StringRegistry,
+  private val deobfuscatorRegistry: DeobfuscatorRegistry,
   private val analysisResult: AnalysisResult,
   private val classRegistry: ClassRegistry,
+  private val shouldCacheLiteral: (String) -> Boolean,
+  private val constantAccessorRegistry: ConstantAccessorRegistry?,
+  private val warmUpTypes: Set<Type.Object>,
+  // A generated class that replaces DeobfuscatorWarmUp or null if nothing is warmed up.
+  private val warmUpType: Type.Object?,
+  // Tells whether a string has been accessed during startup by an instrumented build, so it's warmed up wherever it's
+  // used, or null if there's no profile.
+  private val isStartupString: ((String) -> Boolean)?,
   private val asmApi: Int,
 ) {
 
@@ -45,6 +52,18 @@ class Patcher(
     }
   }
 
+  fun collectStrings(sources: List<FileSource>, classListener: (Type.Object) -> Unit) {
+    sources.forEach { source ->
+      logger.info("Collecting strings from {}", source)
+      source.listFiles { name, type ->
+        if (type == FileSource.EntryType.CLASS) {
+          getObjectTypeFromFile(name)?.let(classListener)
+          patchClass(source, name)
+        }
+      }
+    }
+  }
+
   private fun copyAndPatchClasses(source: FileSource, sink: FileSink) {
     logger.info("Patching...")
     logger.info("   Input: {}", source)
@@ -60,7 +79,10 @@ class Patcher(
   }
 
   private fun copyAndPatchClass(source: FileSource, sink: FileSink, name: String) {
-    if (!maybePatchClass(source, sink, name)) {
+    val patchedClass = patchClass(source, name)
+    if (patchedClass != null) {
+      sink.createFile(name, patchedClass)
+    } else {
       source.copyFileTo(sink, name)
     }
   }
@@ -73,30 +95,102 @@ class Patcher(
     return null
   }
 
-  private fun maybePatchClass(source: FileSource, sink: FileSink, name: String): Boolean {
+  private fun patchClass(source: FileSource, name: String): ByteArray? {
     val type = getObjectTypeFromFile(name) ?: run {
       logger.error("Skip patching for {}", name)
-      return false
+      return null
     }
 
     val configuration = analysisResult.configurationsByType[type]
     val hasObfuscateAnnotation = OBFUSCATE_TYPE in classRegistry.getClassMirror(type).annotations
-    if (configuration == null && !hasObfuscateAnnotation) {
-      return false
+    if (configuration == null && !hasObfuscateAnnotation && constantAccessorRegistry == null && warmUpType == null) {
+      return null
     }
 
-    logger.debug("Patching class {}", name)
     val reader = ClassReader(source.readFile(name))
+    val hasConstantReads = constantAccessorRegistry != null && reader.hasConstantReads(constantAccessorRegistry)
+    val hasWarmUpCalls = warmUpType != null && reader.hasWarmUpCalls()
+    if (configuration == null && !hasObfuscateAnnotation && !hasConstantReads && !hasWarmUpCalls) {
+      return null
+    }
+
+    logger.debug("Patching class {}", name)
     val writer = StandaloneClassWriter(ClassWriter.COMPUTE_MAXS or ClassWriter.COMPUTE_FRAMES, classRegistry)
     val shouldObfuscateLiterals = reader.access and Opcodes.ACC_INTERFACE == 0
+    val shard = deobfuscatorRegistry.getShard(type)
+    val deobfuscator = shard.deobfuscator
+    val stringRegistry = shard.stringRegistry
+      .let {
+        when {
+          type in warmUpTypes -> WarmUpStringRegistry(it, shard.warmUpStrings)
+          isStartupString != null -> WarmUpStringRegistry(it, shard.warmUpStrings, isStartupString)
+          else -> it
+        }
+      }
+      .let { if (shard.recordedStrings != null) AccessRecordingStringRegistry(it, shard.recordedStrings) else it }
     val patcher =
       writer
         .wrapIf(hasObfuscateAnnotation) { RemoveObfuscateClassPatcher(asmApi, it) }
-        .wrapIf(configuration != null) { StringLiteralsClassPatcher(deobfuscator, stringRegistry, asmApi, it) }
-        .wrapIf(configuration != null && shouldObfuscateLiterals) { StringConstantsClassPatcher(configuration!!, asmApi, it) }
+        .wrapIf(configuration != null) {
+          StringLiteralsClassPatcher(deobfuscator, stringRegistry, shouldCacheLiteral, asmApi, it)
+        }
+        .wrapIf(configuration != null && shouldObfuscateLiterals) {
+          StringConstantsClassPatcher(
+            configuration!!,
+            deobfuscator,
+            stringRegistry,
+            constantAccessorRegistry,
+            asmApi,
+            it
+          )
+        }
+        // Reads are replaced before constant accessors are generated, so the accessors still read the fields.
+        .wrapIf(hasConstantReads) { ConstantReadsClassPatcher(constantAccessorRegistry!!, asmApi, it) }
+        .wrapIf(hasWarmUpCalls) { WarmUpCallsClassPatcher(warmUpType!!, asmApi, it) }
     reader.accept(patcher, ClassReader.SKIP_FRAMES)
-    sink.createFile(name, writer.toByteArray())
-    return true
+    return writer.toByteArray()
+  }
+
+  private fun ClassReader.hasConstantReads(constantAccessorRegistry: ConstantAccessorRegistry): Boolean {
+    return hasInstruction { onMatch ->
+      object : MethodVisitor(asmApi) {
+        override fun visitFieldInsn(opcode: Int, owner: String, name: String, descriptor: String) {
+          if (opcode == Opcodes.GETSTATIC && constantAccessorRegistry.findAccessor(owner, name, descriptor) != null) {
+            onMatch()
+          }
+        }
+      }
+    }
+  }
+
+  private fun ClassReader.hasWarmUpCalls(): Boolean {
+    return hasInstruction { onMatch ->
+      object : MethodVisitor(asmApi) {
+        override fun visitMethodInsn(opcode: Int, owner: String, name: String, desc: String, isInterface: Boolean) {
+          if (WarmUpCallsClassPatcher.isWarmUpCall(opcode, owner)) {
+            onMatch()
+          }
+        }
+      }
+    }
+  }
+
+  private fun ClassReader.hasInstruction(createMethodVisitor: (onMatch: () -> Unit) -> MethodVisitor): Boolean {
+    var hasInstruction = false
+    val methodVisitor = createMethodVisitor { hasInstruction = true }
+    val classVisitor = object : ClassVisitor(asmApi) {
+      override fun visitMethod(
+        access: Int,
+        name: String,
+        desc: String,
+        signature: String?,
+        exceptions: Array<out String>?
+      ): MethodVisitor? {
+        return if (hasInstruction) null else methodVisitor
+      }
+    }
+    accept(classVisitor, ClassReader.SKIP_DEBUG or ClassReader.SKIP_FRAMES)
+    return hasInstruction
   }
 
   private inline fun ClassVisitor.wrapIf(condition: Boolean, wrapper: (ClassVisitor) -> ClassVisitor): ClassVisitor {
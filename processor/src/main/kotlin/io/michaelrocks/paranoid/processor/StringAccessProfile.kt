@@ -0,0 +1,89 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import io.michaelrocks.paranoid.StringAccessRecorder
+import java.io.File
+import java.security.MessageDigest
+
+// Accesses to strings recorded by StringAccessRecorder of an instrumented build.
+class StringAccessProfile(val entries: Collection<Entry>) {
+  val entriesByKey: Map<Long, Entry> = entries.associateBy { it.key }
+
+  // The same string is looked up by every pass over classes, so its key is computed only once.
+  private val keysByString = HashMap<String, Long>()
+
+  fun findEntry(string: String): Entry? {
+    return entriesByKey[keysByString.getOrPut(string) { getStringKey(string) }]
+  }
+
+  data class Entry(
+    val key: Long,
+    val hits: Long,
+    // The position of the string among accessed strings, starting with 1.
+    val order: Int,
+    val firstAccessNanos: Long
+  )
+
+  companion object {
+    fun read(file: File): StringAccessProfile {
+      val lines = file.readLines()
+      if (lines.firstOrNull() != StringAccessRecorder.PROFILE_HEADER) {
+        throw ParanoidException("$file isn't a string access profile")
+      }
+
+      // A string used by several deobfuscators or profiles of several runs concatenated together yield several
+      // entries with the same key, which are merged.
+      val entriesByKey = LinkedHashMap<Long, Entry>()
+      lines.forEachIndexed { index, line ->
+        if (line.isNotBlank() && !line.startsWith("#")) {
+          val entry = parseEntry(line) ?: throw ParanoidException("Malformed line ${index + 1} in $file: $line")
+          entriesByKey.merge(entry.key, entry) { entry1, entry2 ->
+            Entry(
+              entry1.key,
+              entry1.hits + entry2.hits,
+              minOf(entry1.order, entry2.order),
+              minOf(entry1.firstAccessNanos, entry2.firstAccessNanos)
+            )
+          }
+        }
+      }
+      return StringAccessProfile(entriesByKey.values.sortedBy { it.order })
+    }
+
+    private fun parseEntry(line: String): Entry? {
+      val fields = line.trim().split(' ')
+      if (fields.size != 4) {
+        return null
+      }
+
+      return Entry(
+        fields[0].toULongOrNull(16)?.toLong() ?: return null,
+        fields[1].toLongOrNull() ?: return null,
+        fields[2].toIntOrNull() ?: return null,
+        fields[3].toLongOrNull() ?: return null
+      )
+    }
+  }
+}
+
+// Identifies a string in a profile regardless of where it's stored in the pool, so a profile recorded by one build
+// can be applied to another one.
+fun getStringKey(string: String): Long {
+  val digest = MessageDigest.getInstance("SHA-256").digest(string.toByteArray(Charsets.UTF_8))
+  return (0 until 8).fold(0L) { key, index -> (key shl 8) or (digest[index].toLong() and 0xff) }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import org.objectweb.asm.commons.GeneratorAdapter
+
+// Encodes strings of an obfuscation tier. Strings are decoded at runtime by a StringDecoder the codec creates.
+interface StringCodec {
+  fun createStringRegistry(seed: Int): StringRegistry
+
+  // Pushes a decoder for strings of a registry that was created with the same seed.
+  fun newStringDecoder(generator: GeneratorAdapter, seed: Int)
+}
@@ -18,17 +18,25 @@ package io.michaelrocks.paranoid.processor
 
 import com.joom.grip.mirrors.toAsmType
 import io.michaelrocks.paranoid.processor.logging.getLogger
+import io.michaelrocks.paranoid.processor.model.Deobfuscator
 import org.objectweb.asm.ClassVisitor
 import org.objectweb.asm.FieldVisitor
 import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes.ACC_FINAL
 import org.objectweb.asm.Opcodes.ACC_PRIVATE
+import org.objectweb.asm.Opcodes.ACC_PROTECTED
+import org.objectweb.asm.Opcodes.ACC_PUBLIC
 import org.objectweb.asm.Opcodes.ACC_STATIC
+import org.objectweb.asm.Opcodes.ACC_SYNTHETIC
 import org.objectweb.asm.Type
 import org.objectweb.asm.commons.GeneratorAdapter
 import org.objectweb.asm.commons.Method
 
 class StringConstantsClassPatcher(
   private val configuration: ClassConfiguration,
+  private val deobfuscator: Deobfuscator,
+  private val stringRegistry: StringRegistry,
+  private val constantAccessorRegistry: ConstantAccessorRegistry?,
   asmApi: Int,
   delegate: ClassVisitor,
 ) : ClassVisitor(asmApi, delegate) {
@@ -36,6 +44,12 @@ class StringConstantsClassPatcher(
   private val logger = getLogger()
 
   private var isStaticInitializerPatched = false
+  private val accessesByLazyFieldName = LinkedHashMap<String, Int>()
+
+  // Constants without an accessor are decoded when the class is initialized.
+  private val eagerConstantStringsByFieldName = configuration.constantStringsByFieldName.filterKeys { field ->
+    constantAccessorRegistry?.getAccessor(configuration, field) == null
+  }
 
   override fun visit(
     version: Int,
@@ -46,12 +60,21 @@ class StringConstantsClassPatcher(
     interfaces: Array<out String>?
   ) {
     super.visit(version, access, name, signature, superName, interfaces)
-    isStaticInitializerPatched = configuration.constantStringsByFieldName.isEmpty()
+    isStaticInitializerPatched = eagerConstantStringsByFieldName.isEmpty()
   }
 
   override fun visitField(access: Int, name: String, desc: String, signature: String?, value: Any?): FieldVisitor? {
-    val newValue = if (name in configuration.constantStringsByFieldName) null else value
-    return super.visitField(access, name, desc, signature, newValue)
+    if (name !in configuration.constantStringsByFieldName) {
+      return super.visitField(access, name, desc, signature, value)
+    }
+
+    if (name !in eagerConstantStringsByFieldName) {
+      // A lazy constant is assigned by its accessor, which isn't allowed for a final field.
+      accessesByLazyFieldName[name] = access
+      return super.visitField(access and ACC_FINAL.inv(), name, desc, signature, null)
+    }
+
+    return super.visitField(access, name, desc, signature, null)
   }
 
   override fun visitMethod(
@@ -70,6 +93,10 @@ class StringConstantsClassPatcher(
   }
 
   override fun visitEnd() {
+    if (constantAccessorRegistry != null) {
+      generateConstantAccessors(constantAccessorRegistry)
+    }
+
     if (!isStaticInitializerPatched) {
       GeneratorAdapter(ACC_PRIVATE or ACC_STATIC, STATIC_INITIALIZER_METHOD, null, null, this).apply {
         visitCode()
@@ -81,6 +108,31 @@ class StringConstantsClassPatcher(
     super.visitEnd()
   }
 
+  private fun generateConstantAccessors(constantAccessorRegistry: ConstantAccessorRegistry) {
+    val containerType = configuration.container.toAsmType()
+    accessesByLazyFieldName.forEach { (field, fieldAccess) ->
+      val accessor = constantAccessorRegistry.getAccessor(configuration, field) ?: return@forEach
+      val visibility = fieldAccess and (ACC_PUBLIC or ACC_PROTECTED or ACC_PRIVATE)
+      GeneratorAdapter(visibility or ACC_STATIC or ACC_SYNTHETIC, accessor.method, null, null, this).apply {
+        // Concurrent reads may decode the constant more than once but they all get an equal string.
+        val decodedLabel = newLabel()
+        visitCode()
+        getStatic(containerType, field, STRING_TYPE)
+        dup()
+        ifNonNull(decodedLabel)
+        pop()
+        val stringId = stringRegistry.registerString(configuration.constantStringsByFieldName.getValue(field))
+        pushStringId(deobfuscator, stringId)
+        invokeStatic(deobfuscator.type.toAsmType(), deobfuscator.deobfuscationMethod)
+        dup()
+        putStatic(containerType, field, STRING_TYPE)
+        mark(decodedLabel)
+        returnValue()
+        endMethod()
+      }
+    }
+  }
+
   private fun createStaticInitializerPatcher(
     visitor: MethodVisitor,
     access: Int,
@@ -94,9 +146,30 @@ class StringConstantsClassPatcher(
           logger.info("{}:", configuration.container.internalName)
           logger.info("  Patching <clinit>...")
           super.visitCode()
-          for ((field, value) in configuration.constantStringsByFieldName) {
-            push(value)
-            putStatic(configuration.container.toAsmType(), field, STRING_TYPE)
+          val constantStringsByFieldName = eagerConstantStringsByFieldName
+          val baseStringId = if (constantStringsByFieldName.size >= MIN_BULK_CONSTANT_COUNT) {
+            stringRegistry.registerStrings(constantStringsByFieldName.values.toList())
+          } else {
+            null
+          }
+
+          if (baseStringId != null) {
+            // All constants are decoded by a single call, which sets up the keystream only once.
+            push(baseStringId)
+            push(constantStringsByFieldName.size)
+            invokeStatic(deobfuscator.type.toAsmType(), deobfuscator.bulkDeobfuscationMethod)
+            constantStringsByFieldName.keys.forEachIndexed { index, field ->
+              dup()
+              push(index)
+              arrayLoad(STRING_TYPE)
+              putStatic(configuration.container.toAsmType(), field, STRING_TYPE)
+            }
+            pop()
+          } else {
+            for ((field, value) in constantStringsByFieldName) {
+              push(value)
+              putStatic(configuration.container.toAsmType(), field, STRING_TYPE)
+            }
           }
         }
       }
@@ -108,5 +181,7 @@ class StringConstantsClassPatcher(
   companion object {
     private val STATIC_INITIALIZER_METHOD = Method("<clinit>", Type.VOID_TYPE, arrayOf())
     private val STRING_TYPE = Type.getType(String::class.java)
+
+    private const val MIN_BULK_CONSTANT_COUNT = 2
   }
 }
@@ -20,12 +20,24 @@ import com.joom.grip.mirrors.toAsmType
 import io.michaelrocks.paranoid.processor.logging.getLogger
 import io.michaelrocks.paranoid.processor.model.Deobfuscator
 import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.Handle
+import org.objectweb.asm.Label
 import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.Opcodes.ACC_INTERFACE
+import org.objectweb.asm.Opcodes.ACC_PRIVATE
+import org.objectweb.asm.Opcodes.ACC_STATIC
+import org.objectweb.asm.Opcodes.ACC_SYNTHETIC
+import org.objectweb.asm.Type
 import org.objectweb.asm.commons.GeneratorAdapter
+import org.objectweb.asm.commons.Method
+import java.io.Reader
+import java.io.StringReader
 
 class StringLiteralsClassPatcher(
   private val deobfuscator: Deobfuscator,
   private val stringRegistry: StringRegistry,
+  private val shouldCacheLiteral: (String) -> Boolean,
   asmApi: Int,
   delegate: ClassVisitor,
 ) : ClassVisitor(asmApi, delegate) {
@@ -33,6 +45,9 @@ class StringLiteralsClassPatcher(
   private val logger = getLogger()
 
   private var className: String = ""
+  private var isInterface = false
+
+  private val cachedLiteralsByString = LinkedHashMap<String, CachedLiteral>()
 
   override fun visit(
     version: Int,
@@ -44,6 +59,7 @@ class StringLiteralsClassPatcher(
   ) {
     super.visit(version, access, name, signature, superName, interfaces)
     className = name
+    isInterface = access and ACC_INTERFACE != 0
   }
 
   override fun visitMethod(
@@ -54,22 +70,505 @@ class StringLiteralsClassPatcher(
     exceptions: Array<out String>?
   ): MethodVisitor {
     val visitor = super.visitMethod(access, name, desc, signature, exceptions)
+    // Interfaces cannot have private mutable fields and a static initializer runs only once, so caching is useless.
+    val canCacheLiterals = !isInterface && name != STATIC_INITIALIZER_METHOD.name
     return object : GeneratorAdapter(api, visitor, access, name, desc) {
+      // A string literal and a local variable loaded after it are held back until the next instruction shows
+      // whether the literal is compared with something, appended to a builder or read by a reader. The new and dup
+      // instructions of a StringReader are held back too, so the reader can be replaced with another one.
+      private var pendingString: String? = null
+      private var pendingLoadIndex = NO_LOAD_INDEX
+      private var isPendingReceiverNonNull = false
+      private var pendingReaderInstructionCount = 0
+
+      // The reader that replaces a StringReader isn't a StringReader itself, so a StringReader of a literal is held
+      // back until the next instruction shows that the reader is only used as a Reader.
+      private var pendingReaderString: String? = null
+
+      // A string switch compiled by javac or kotlinc dispatches on the hash code of a local variable and then
+      // compares the variable with case labels. The variable cannot be null when it's loaded right at a case of the
+      // switch, so that comparison doesn't need a null check. A case is trusted only when nothing but the switch can
+      // reach it: the instruction before it doesn't fall through and no other instruction seen so far jumps to it.
+      // Compilers never jump back to a case of a string switch, so later jumps aren't waited for.
+      private var previousLoadIndex = NO_LOAD_INDEX
+      private var isPreviousLoadNonNull = false
+      private var hashedLoadIndex = NO_LOAD_INDEX
+      private var caseSelectorIndex = NO_LOAD_INDEX
+      private var canFallThrough = true
+      private val selectorIndicesByCaseLabel = HashMap<Label, Int>()
+      private val jumpCountsByLabel = HashMap<Label, Int>()
+
       override fun visitLdcInsn(constant: Any) {
-        if (constant is String) {
+        val string = constant as? String
+        val shouldDecodeInPlace = string != null && shouldDecodeInPlace(string)
+        if (shouldDecodeInPlace && pendingReaderInstructionCount == 2 && pendingString == null) {
+          pendingString = string
+          isPendingReceiverNonNull = false
+          return
+        }
+
+        val isReceiverNonNull = isPreviousLoadNonNull
+        onInstruction()
+        if (shouldDecodeInPlace) {
+          pendingString = string
+          isPendingReceiverNonNull = isReceiverNonNull
+        } else if (constant is String) {
           replaceStringWithDeobfuscationMethod(constant)
         } else {
           super.visitLdcInsn(constant)
         }
       }
 
+      override fun visitVarInsn(opcode: Int, index: Int) {
+        if (pendingString != null && pendingLoadIndex == NO_LOAD_INDEX && opcode == Opcodes.ALOAD) {
+          pendingLoadIndex = index
+          return
+        }
+
+        val selectorIndex = caseSelectorIndex
+        onInstruction()
+        super.visitVarInsn(opcode, index)
+        if (opcode == Opcodes.ALOAD) {
+          previousLoadIndex = index
+          isPreviousLoadNonNull = index == selectorIndex
+        }
+      }
+
+      override fun visitMethodInsn(
+        opcode: Int,
+        owner: String,
+        methodName: String,
+        methodDesc: String,
+        isInterface: Boolean
+      ) {
+        val readerString = pendingReaderString
+        if (readerString != null && Type.getArgumentTypes(methodDesc).lastOrNull() == READER_TYPE) {
+          pendingReaderString = null
+          replaceReader(readerString)
+        }
+
+        val string = pendingString
+        if (string != null && pendingLoadIndex == NO_LOAD_INDEX && pendingReaderInstructionCount == 2 &&
+          isStringReaderConstructor(opcode, owner, methodName, methodDesc)
+        ) {
+          pendingString = null
+          pendingReaderInstructionCount = 0
+          pendingReaderString = string
+          return
+        }
+
+        val isAppend = isStringBuilderAppend(opcode, owner, methodName, methodDesc)
+        if (string != null && pendingLoadIndex == NO_LOAD_INDEX && isAppend) {
+          pendingString = null
+          flushPendingReader()
+          replaceAppend(string)
+          return
+        }
+
+        val isLength = isStringLength(opcode, owner, methodName, methodDesc)
+        if (string != null && pendingLoadIndex == NO_LOAD_INDEX && isLength) {
+          pendingString = null
+          flushPendingReader()
+          replaceLength(string)
+          return
+        }
+
+        val comparison = StringComparison.find(opcode, owner, methodName, methodDesc)
+        // The literal comes first when a local variable is loaded after it.
+        val isLiteralFirst = pendingLoadIndex != NO_LOAD_INDEX
+        if (string != null && comparison != null && (isLiteralFirst || comparison.isSymmetric)) {
+          val loadIndex = pendingLoadIndex
+          pendingString = null
+          pendingLoadIndex = NO_LOAD_INDEX
+          flushPendingReader()
+          replaceComparison(string, loadIndex, comparison)
+          return
+        }
+
+        val loadIndex = previousLoadIndex
+        onInstruction()
+        super.visitMethodInsn(opcode, owner, methodName, methodDesc, isInterface)
+        if (opcode == Opcodes.INVOKEVIRTUAL && owner == STRING_TYPE.internalName && methodName == "hashCode") {
+          hashedLoadIndex = loadIndex
+        }
+      }
+
+      override fun visitInsn(opcode: Int) {
+        if (opcode == Opcodes.DUP && pendingReaderInstructionCount == 1) {
+          pendingReaderInstructionCount = 2
+          return
+        }
+
+        val readerString = pendingReaderString
+        if (readerString != null && opcode == Opcodes.ARETURN && Type.getReturnType(desc) == READER_TYPE) {
+          pendingReaderString = null
+          replaceReader(readerString)
+        }
+
+        onInstruction()
+        super.visitInsn(opcode)
+        if (opcode in Opcodes.IRETURN..Opcodes.RETURN || opcode == Opcodes.ATHROW) {
+          canFallThrough = false
+        }
+      }
+
+      override fun visitIntInsn(opcode: Int, operand: Int) {
+        onInstruction()
+        super.visitIntInsn(opcode, operand)
+      }
+
+      override fun visitTypeInsn(opcode: Int, type: String) {
+        onInstruction()
+        if (opcode == Opcodes.NEW && type == STRING_READER_TYPE.internalName) {
+          pendingReaderInstructionCount = 1
+          return
+        }
+
+        super.visitTypeInsn(opcode, type)
+      }
+
+      override fun visitFieldInsn(opcode: Int, owner: String, name: String, descriptor: String) {
+        onInstruction()
+        super.visitFieldInsn(opcode, owner, name, descriptor)
+      }
+
+      override fun visitInvokeDynamicInsn(name: String, descriptor: String, handle: Handle, vararg arguments: Any) {
+        onInstruction()
+        super.visitInvokeDynamicInsn(name, descriptor, handle, *arguments)
+      }
+
+      override fun visitJumpInsn(opcode: Int, label: Label) {
+        registerJump(label)
+        onInstruction()
+        super.visitJumpInsn(opcode, label)
+        if (opcode == Opcodes.GOTO) {
+          canFallThrough = false
+        }
+      }
+
+      override fun visitLabel(label: Label) {
+        val selectorIndex = selectorIndicesByCaseLabel[label]
+        val isReachedBySwitchOnly = !canFallThrough && jumpCountsByLabel[label] == 1
+        val couldFallThrough = canFallThrough
+        onInstruction()
+        super.visitLabel(label)
+        canFallThrough = couldFallThrough
+        if (selectorIndex != null && isReachedBySwitchOnly) {
+          caseSelectorIndex = selectorIndex
+        }
+      }
+
+      override fun visitTryCatchBlock(start: Label, end: Label, handler: Label, type: String?) {
+        registerJump(handler)
+        super.visitTryCatchBlock(start, end, handler, type)
+      }
+
+      override fun visitIincInsn(index: Int, increment: Int) {
+        onInstruction()
+        super.visitIincInsn(index, increment)
+      }
+
+      override fun visitTableSwitchInsn(min: Int, max: Int, defaultLabel: Label, vararg labels: Label) {
+        registerSwitch(defaultLabel, labels)
+        onInstruction()
+        super.visitTableSwitchInsn(min, max, defaultLabel, *labels)
+        canFallThrough = false
+      }
+
+      override fun visitLookupSwitchInsn(defaultLabel: Label, keys: IntArray, labels: Array<out Label>) {
+        registerSwitch(defaultLabel, labels)
+        onInstruction()
+        super.visitLookupSwitchInsn(defaultLabel, keys, labels)
+        canFallThrough = false
+      }
+
+      override fun visitMultiANewArrayInsn(descriptor: String, dimensions: Int) {
+        onInstruction()
+        super.visitMultiANewArrayInsn(descriptor, dimensions)
+      }
+
+      override fun visitFrame(
+        type: Int,
+        localCount: Int,
+        local: Array<out Any>?,
+        stackCount: Int,
+        stack: Array<out Any>?
+      ) {
+        val selectorIndex = caseSelectorIndex
+        val couldFallThrough = canFallThrough
+        onInstruction()
+        super.visitFrame(type, localCount, local, stackCount, stack)
+        caseSelectorIndex = selectorIndex
+        canFallThrough = couldFallThrough
+      }
+
+      override fun visitMaxs(maxStack: Int, maxLocals: Int) {
+        onInstruction()
+        super.visitMaxs(maxStack, maxLocals)
+      }
+
+      override fun visitEnd() {
+        onInstruction()
+        super.visitEnd()
+      }
+
+      private fun onInstruction() {
+        flushPendingStringReader()
+        flushPendingString()
+        previousLoadIndex = NO_LOAD_INDEX
+        isPreviousLoadNonNull = false
+        hashedLoadIndex = NO_LOAD_INDEX
+        caseSelectorIndex = NO_LOAD_INDEX
+        canFallThrough = true
+      }
+
+      private fun registerJump(label: Label) {
+        jumpCountsByLabel[label] = jumpCountsByLabel.getOrDefault(label, 0) + 1
+      }
+
+      private fun registerSwitch(defaultLabel: Label, labels: Array<out Label>) {
+        registerJump(defaultLabel)
+        labels.forEach { registerJump(it) }
+        if (hashedLoadIndex != NO_LOAD_INDEX) {
+          labels.forEach { selectorIndicesByCaseLabel[it] = hashedLoadIndex }
+        }
+      }
+
+      private fun flushPendingReader() {
+        if (pendingReaderInstructionCount >= 1) {
+          super.visitTypeInsn(Opcodes.NEW, STRING_READER_TYPE.internalName)
+        }
+        if (pendingReaderInstructionCount >= 2) {
+          super.visitInsn(Opcodes.DUP)
+        }
+        pendingReaderInstructionCount = 0
+      }
+
+      private fun flushPendingStringReader() {
+        val string = pendingReaderString ?: return
+        pendingReaderString = null
+        super.visitTypeInsn(Opcodes.NEW, STRING_READER_TYPE.internalName)
+        super.visitInsn(Opcodes.DUP)
+        replaceStringWithDeobfuscationMethod(string)
+        super.visitMethodInsn(
+          Opcodes.INVOKESPECIAL,
+          STRING_READER_TYPE.internalName,
+          METHOD_STRING_CONSTRUCTOR.name,
+          METHOD_STRING_CONSTRUCTOR.descriptor,
+          false
+        )
+      }
+
+      private fun flushPendingString() {
+        flushPendingReader()
+        val string = pendingString ?: return
+        pendingString = null
+        replaceStringWithDeobfuscationMethod(string)
+        if (pendingLoadIndex != NO_LOAD_INDEX) {
+          super.visitVarInsn(Opcodes.ALOAD, pendingLoadIndex)
+          pendingLoadIndex = NO_LOAD_INDEX
+        }
+      }
+
+      private fun replaceReader(string: String) {
+        logger.info("{}.{}{}:", className, name, desc)
+        logger.info("  Reading string literal: \"{}\"", string)
+        pushStringId(deobfuscator, stringRegistry.registerString(string))
+        invokeStatic(deobfuscator.type.toAsmType(), deobfuscator.readerMethod)
+      }
+
+      private fun replaceLength(string: String) {
+        logger.info("{}.{}{}:", className, name, desc)
+        logger.info("  Measuring string literal: \"{}\"", string)
+        pushStringId(deobfuscator, stringRegistry.registerString(string))
+        invokeStatic(deobfuscator.type.toAsmType(), deobfuscator.lengthMethod)
+      }
+
+      private fun replaceAppend(string: String) {
+        logger.info("{}.{}{}:", className, name, desc)
+        logger.info("  Appending string literal: \"{}\"", string)
+        pushStringId(deobfuscator, stringRegistry.registerString(string))
+        invokeStatic(deobfuscator.type.toAsmType(), deobfuscator.appendMethod)
+      }
+
+      private fun replaceComparison(string: String, loadIndex: Int, comparison: StringComparison) {
+        logger.info("{}.{}{}:", className, name, desc)
+        logger.info("  Comparing with string literal: \"{}\"", string)
+        val stringId = stringRegistry.registerString(string)
+        val method = if (comparison.isNullSafe) deobfuscator.contentEqualsMethod else deobfuscator.equalsMethod
+        if (loadIndex != NO_LOAD_INDEX) {
+          pushStringId(deobfuscator, stringId)
+          super.visitVarInsn(Opcodes.ALOAD, loadIndex)
+        } else {
+          // The literal is the second operand here, so the other one is already on the stack.
+          if (comparison.isInstanceMethod && !isPendingReceiverNonNull) {
+            // Calling a method on null has to throw as before.
+            dup()
+            invokeVirtual(OBJECT_TYPE.toAsmType(), METHOD_GET_CLASS)
+            pop()
+          }
+          pushStringId(deobfuscator, stringId)
+          swap(OBJECT_TYPE.toAsmType(), method.argumentTypes[0])
+        }
+        invokeStatic(deobfuscator.type.toAsmType(), method)
+      }
+
+      // Cached literals don't allocate when they're used, so they're used as usual.
+      private fun shouldDecodeInPlace(string: String): Boolean {
+        return !isCachedLiteral(string)
+      }
+
+      private fun isCachedLiteral(string: String): Boolean {
+        return canCacheLiterals && shouldCacheLiteral(string)
+      }
+
       private fun replaceStringWithDeobfuscationMethod(string: String) {
         logger.info("{}.{}{}:", className, name, desc)
         logger.info("  Obfuscating string literal: \"{}\"", string)
-        val stringId = stringRegistry.registerString(string)
-        push(stringId)
-        invokeStatic(deobfuscator.type.toAsmType(), deobfuscator.deobfuscationMethod)
+        if (isCachedLiteral(string)) {
+          replaceStringWithCachedLiteral(string)
+        } else {
+          val stringId = stringRegistry.registerString(string)
+          pushStringId(deobfuscator, stringId)
+          invokeStatic(deobfuscator.type.toAsmType(), deobfuscator.deobfuscationMethod)
+        }
+      }
+
+      private fun replaceStringWithCachedLiteral(string: String) {
+        val literal = cachedLiteralsByString.getOrPut(string) {
+          val index = cachedLiteralsByString.size
+          CachedLiteral(
+            stringId = stringRegistry.registerString(string),
+            fieldName = "$CACHED_LITERAL_FIELD_PREFIX$index",
+            method = Method("$CACHED_LITERAL_METHOD_PREFIX$index", STRING_TYPE, arrayOf())
+          )
+        }
+
+        val cachedLabel = newLabel()
+        getStatic(Type.getObjectType(className), literal.fieldName, STRING_TYPE)
+        dup()
+        ifNonNull(cachedLabel)
+        pop()
+        invokeStatic(Type.getObjectType(className), literal.method)
+        mark(cachedLabel)
       }
     }
   }
+
+  override fun visitEnd() {
+    cachedLiteralsByString.values.forEach { literal ->
+      generateCachedLiteral(literal)
+    }
+
+    super.visitEnd()
+  }
+
+  private fun generateCachedLiteral(literal: CachedLiteral) {
+    val access = ACC_PRIVATE or ACC_STATIC or ACC_SYNTHETIC
+    visitField(access, literal.fieldName, STRING_TYPE.descriptor, null, null).apply {
+      visitEnd()
+    }
+
+    // A cache miss is handled out of line to keep call sites small enough to be inlined.
+    newMethod(access, literal.method) {
+      pushStringId(deobfuscator, literal.stringId)
+      invokeStatic(deobfuscator.type.toAsmType(), deobfuscator.deobfuscationMethod)
+      dup()
+      putStatic(Type.getObjectType(className), literal.fieldName, STRING_TYPE)
+    }
+  }
+
+  private fun isStringBuilderAppend(opcode: Int, owner: String, methodName: String, methodDesc: String): Boolean {
+    return opcode == Opcodes.INVOKEVIRTUAL &&
+      owner == STRING_BUILDER_TYPE.internalName &&
+      methodName == METHOD_STRING_BUILDER_APPEND.name &&
+      methodDesc == METHOD_STRING_BUILDER_APPEND.descriptor
+  }
+
+  private fun isStringLength(opcode: Int, owner: String, methodName: String, methodDesc: String): Boolean {
+    return opcode == Opcodes.INVOKEVIRTUAL &&
+      owner == STRING_TYPE.internalName &&
+      methodName == METHOD_STRING_LENGTH.name &&
+      methodDesc == METHOD_STRING_LENGTH.descriptor
+  }
+
+  private fun isStringReaderConstructor(opcode: Int, owner: String, methodName: String, methodDesc: String): Boolean {
+    return opcode == Opcodes.INVOKESPECIAL &&
+      owner == STRING_READER_TYPE.internalName &&
+      methodName == METHOD_STRING_CONSTRUCTOR.name &&
+      methodDesc == METHOD_STRING_CONSTRUCTOR.descriptor
+  }
+
+  // Methods that compare a string literal with another operand. A symmetric method gives the same result regardless of
+  // which operand is the literal. The others call equals() of their first operand, which may be an object of any class
+  // when the literal is the second one, so they're rewritten only when the literal comes first.
+  private enum class StringComparison(
+    val opcode: Int,
+    val owner: String,
+    val methodName: String,
+    val methodDesc: String,
+    val isNullSafe: Boolean,
+    val isSymmetric: Boolean
+  ) {
+    STRING_EQUALS(Opcodes.INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", false, true),
+    OBJECTS_EQUALS(
+      Opcodes.INVOKESTATIC,
+      "java/util/Objects",
+      "equals",
+      "(Ljava/lang/Object;Ljava/lang/Object;)Z",
+      false,
+      false
+    ),
+    KOTLIN_ARE_EQUAL(
+      Opcodes.INVOKESTATIC,
+      "kotlin/jvm/internal/Intrinsics",
+      "areEqual",
+      "(Ljava/lang/Object;Ljava/lang/Object;)Z",
+      false,
+      false
+    ),
+    TEXT_UTILS_EQUALS(
+      Opcodes.INVOKESTATIC,
+      "android/text/TextUtils",
+      "equals",
+      "(Ljava/lang/CharSequence;Ljava/lang/CharSequence;)Z",
+      true,
+      true
+    );
+
+    val isInstanceMethod: Boolean
+      get() = opcode != Opcodes.INVOKESTATIC
+
+    companion object {
+      fun find(opcode: Int, owner: String, methodName: String, methodDesc: String): StringComparison? {
+        return values().firstOrNull {
+          it.opcode == opcode && it.owner == owner && it.methodName == methodName && it.methodDesc == methodDesc
+        }
+      }
+    }
+  }
+
+  private class CachedLiteral(
+    val stringId: Long,
+    val fieldName: String,
+    val method: Method
+  )
+
+  companion object {
+    private val STATIC_INITIALIZER_METHOD = Method("<clinit>", Type.VOID_TYPE, arrayOf())
+    private val STRING_TYPE = Type.getType(String::class.java)
+
+    private const val CACHED_LITERAL_FIELD_PREFIX = "paranoid\$literal\$"
+    private const val CACHED_LITERAL_METHOD_PREFIX = "paranoid\$getLiteral\$"
+
+    private const val NO_LOAD_INDEX = -1
+    private val METHOD_GET_CLASS = Method("getClass", "()Ljava/lang/Class;")
+    private val STRING_BUILDER_TYPE = Type.getType(StringBuilder::class.java)
+    private val METHOD_STRING_BUILDER_APPEND = Method("append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;")
+    private val STRING_READER_TYPE = Type.getType(StringReader::class.java)
+    private val READER_TYPE = Type.getType(Reader::class.java)
+    private val METHOD_STRING_LENGTH = Method("length", "()I")
+    private val METHOD_STRING_CONSTRUCTOR = Method("<init>", "(Ljava/lang/String;)V")
+
+  }
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid.processor
+
+import io.michaelrocks.paranoid.DeobfuscatorHelper
+import io.michaelrocks.paranoid.RandomHelper
+import java.io.ByteArrayOutputStream
+import java.util.zip.Deflater
+
+internal fun MutableList<Int>.addSevenBitUnits(value: Int) {
+  if (value < DeobfuscatorHelper.SEVEN_BIT_ESCAPE) {
+    add(value)
+  } else {
+    add(DeobfuscatorHelper.SEVEN_BIT_ESCAPE)
+    for (i in DeobfuscatorHelper.SEVEN_BIT_ESCAPED_UNIT_COUNT - 1 downTo 0) {
+      add((value ushr (7 * i)) and DeobfuscatorHelper.SEVEN_BIT_UNIT_MASK)
+    }
+  }
+}
+
+// Encodes a table of longs into chunks that are decoded with DeobfuscatorHelper.getTableEntry().
+internal fun encodeLongTable(values: Collection<Long>): List<String> {
+  val table = StringBuilder(values.size * DeobfuscatorHelper.TABLE_ENTRY_CHAR_COUNT)
+  values.forEach { value ->
+    for (shift in 48 downTo 0 step 16) {
+      table.append((value ushr shift).toInt().toChar())
+    }
+  }
+  return table.toString().chunked(DeobfuscatorHelper.MAX_CHUNK_LENGTH)
+}
+
+internal fun deflateBlock(seed: Long, blockIndex: Int, block: String): String {
+  val deflater = Deflater(Deflater.BEST_COMPRESSION)
+  val bytes = try {
+    deflater.setInput(ByteArray(block.length) { block[it].code.toByte() })
+    deflater.finish()
+    val stream = ByteArrayOutputStream()
+    val buffer = ByteArray(DeobfuscatorHelper.DEFLATE_BLOCK_LENGTH)
+    while (!deflater.finished()) {
+      stream.write(buffer, 0, deflater.deflate(buffer))
+    }
+    stream.toByteArray()
+  } finally {
+    deflater.end()
+  }
+
+  // Encrypted bytes are packed into 7-bit chars, so every char takes a single byte in modified UTF-8.
+  val chunk = StringBuilder()
+  var state = RandomHelper.seed(seed xor (blockIndex.toLong() shl 32))
+  var buffer = 0
+  var bitCount = 0
+  for (byte in bytes) {
+    state = RandomHelper.next(state)
+    buffer = (buffer shl 8) or ((byte.toInt() xor (state ushr 32).toInt()) and 0xff)
+    bitCount += 8
+    while (bitCount >= 7) {
+      bitCount -= 7
+      chunk.append(((buffer ushr bitCount) and 0x7f).toChar())
+    }
+    buffer = buffer and ((1 shl bitCount) - 1)
+  }
+  if (bitCount > 0) {
+    chunk.append(((buffer shl (7 - bitCount)) and 0x7f).toChar())
+  }
+  return chunk.toString()
+}
@@ -18,20 +18,96 @@ package io.michaelrocks.paranoid.processor
 
 import io.michaelrocks.paranoid.DeobfuscatorHelper
 import io.michaelrocks.paranoid.RandomHelper
+import io.michaelrocks.paranoid.processor.model.CipherMode
+import io.michaelrocks.paranoid.processor.model.StringEncoding
+import io.michaelrocks.paranoid.processor.model.StringIdFormat
 
 interface StringRegistry {
   fun registerString(string: String): Long
+  // Returns an id of the first string if the strings can be decoded together or null otherwise.
+  fun registerStrings(strings: List<String>): Long?
+  fun getStringCount(): Int
+  fun getRegisteredStrings(): Collection<String>
+  fun getDuplicateStringCount(): Int
+  fun getDuplicateStringLength(): Long
+  fun getSharedStringLength(): Long
   fun getAllChunks(): List<String>
+  fun getOffsetChunks(): List<String>
 }
 
 class StringRegistryImpl(
-  seed: Int
+  seed: Int,
+  private val encoding: StringEncoding = StringEncoding.UTF16,
+  laidOutStrings: Collection<String> = emptyList(),
+  private val idFormat: StringIdFormat = StringIdFormat.MASKED,
+  private val cipherMode: CipherMode = CipherMode.CHAINED
 ) : StringRegistry {
 
   private val seed = seed.toLong() and 0xffff_ffffL
   private val builder = StringBuilder()
+  private val offsets = ArrayList<Int>()
+  private val idsByString = HashMap<String, Long>()
+  private val unitRangesByString = HashMap<String, IntRange>()
+  private val pendingStrings = HashSet<String>()
+  private var duplicateStringCount = 0
+  private var duplicateStringLength = 0L
+
+  // Chunks are requested several times once all strings are registered, and a deflated pool is expensive to compress,
+  // so chunks are built once and rebuilt only if another string is stored.
+  private var chunks: List<String>? = null
+
+  init {
+    // Strings laid out in advance get their ids before classes are patched.
+    laidOutStrings.forEach { storeString(it) }
+    pendingStrings += laidOutStrings
+  }
 
   override fun registerString(string: String): Long {
+    val existingId = idsByString[string]
+    if (existingId != null) {
+      if (!pendingStrings.remove(string)) {
+        duplicateStringCount += 1
+        duplicateStringLength += string.length
+      }
+      return existingId
+    }
+
+    return storeString(string)
+  }
+
+  override fun registerStrings(strings: List<String>): Long? {
+    if (idFormat == StringIdFormat.INDEXED) {
+      // Indexed strings are cheap to decode one by one, and an index doesn't tell where a string ends.
+      return null
+    }
+
+    if (strings.isNotEmpty() && isStoredSequentially(strings)) {
+      return strings.map { registerString(it) }.first()
+    }
+
+    // A string that is already stored would be stored again, so such strings are registered one by one instead.
+    if (strings.any { it in idsByString } || strings.toSet().size != strings.size) {
+      return null
+    }
+
+    return strings.map { storeString(it) }.firstOrNull()
+  }
+
+  private fun isStoredSequentially(strings: List<String>): Boolean {
+    val unitRanges = strings.map { unitRangesByString[it] ?: return false }
+    return unitRanges.zipWithNext().all { (range, nextRange) -> range.last + 1 == nextRange.first }
+  }
+
+  private fun storeString(string: String): Long {
+    chunks = null
+    val startIndex = builder.length
+    val id = appendString(string)
+    idsByString.putIfAbsent(string, id)
+    unitRangesByString.putIfAbsent(string, startIndex until builder.length)
+    return id
+  }
+
+  private fun appendString(string: String): Long {
     var mask = 0L
     var state = RandomHelper.seed(seed)
     state = RandomHelper.next(state)
@@ -39,20 +115,100 @@ class StringRegistryImpl(
     state = RandomHelper.next(state)
     mask = mask or ((state and 0xffff_0000_0000L) shl 16)
     val index = builder.length
-    val id = seed or ((index.toLong() shl 32) xor mask)
-
-    state = RandomHelper.next(state)
-    builder.append((((state ushr 32) and 0xffffL) xor string.length.toLong()).toInt().toChar())
+    val id = when (idFormat) {
+      StringIdFormat.MASKED -> seed or (((index.toLong() and 0xffff_ffffL) shl 32) xor mask)
+      StringIdFormat.INDEXED -> offsets.size.toLong().also { offsets += index }
+    }
 
-    for (char in string) {
-      state = RandomHelper.next(state)
-      builder.append((((state ushr 32) and 0xffffL) xor char.code.toLong()).toInt().toChar())
+    when (encoding) {
+      StringEncoding.UTF16 -> when (cipherMode) {
+        CipherMode.CHAINED -> appendEncrypted(encodeUtf16(string), 0xffffL, state)
+        CipherMode.COUNTER -> appendCounterEncrypted(encodeUtf16(string))
+      }
+      StringEncoding.SEVEN_BIT -> {
+        appendEncrypted(encodeSevenBit(string), DeobfuscatorHelper.SEVEN_BIT_UNIT_MASK.toLong(), state)
+      }
+      // Deflated strings are encrypted block by block after compression.
+      StringEncoding.DEFLATE -> encodeSevenBit(string).forEach { builder.append(it.toChar()) }
     }
 
     return id
   }
 
+  override fun getStringCount(): Int {
+    return idsByString.size
+  }
+
+  override fun getRegisteredStrings(): Collection<String> {
+    // Strings laid out in advance but never registered aren't used by any class.
+    return idsByString.keys.filter { it !in pendingStrings }
+  }
+
+  override fun getDuplicateStringCount(): Int {
+    return duplicateStringCount
+  }
+
+  override fun getDuplicateStringLength(): Long {
+    return duplicateStringLength
+  }
+
+  override fun getSharedStringLength(): Long {
+    return 0L
+  }
+
   override fun getAllChunks(): List<String> {
-    return builder.toString().chunked(DeobfuscatorHelper.MAX_CHUNK_LENGTH)
+    return chunks ?: buildChunks().also { chunks = it }
+  }
+
+  private fun buildChunks(): List<String> {
+    return when (encoding) {
+      StringEncoding.UTF16,
+      StringEncoding.SEVEN_BIT -> builder.toString().chunked(DeobfuscatorHelper.MAX_CHUNK_LENGTH)
+      StringEncoding.DEFLATE -> {
+        builder.toString().chunked(DeobfuscatorHelper.DEFLATE_BLOCK_LENGTH).mapIndexed { index, block ->
+          deflateBlock(seed, index, block)
+        }
+      }
+    }
+  }
+
+  override fun getOffsetChunks(): List<String> {
+    val table = StringBuilder(offsets.size * 2)
+    offsets.forEachIndexed { index, offset ->
+      val encryptedOffset = offset xor DeobfuscatorHelper.getOffsetKey(seed.toInt(), index)
+      table.append((encryptedOffset ushr 16).toChar())
+      table.append(encryptedOffset.toChar())
+    }
+    return table.toString().chunked(DeobfuscatorHelper.MAX_CHUNK_LENGTH)
+  }
+
+  private fun appendEncrypted(units: IntArray, unitMask: Long, initialState: Long) {
+    var state = initialState
+    for (unit in units) {
+      state = RandomHelper.next(state)
+      builder.append((((state ushr 32) and unitMask) xor unit.toLong()).toInt().toChar())
+    }
+  }
+
+  private fun appendCounterEncrypted(units: IntArray) {
+    for (unit in units) {
+      builder.append((unit xor DeobfuscatorHelper.getCounterCharKey(seed, builder.length)).toChar())
+    }
+  }
+
+  private fun encodeUtf16(string: String): IntArray {
+    val units = IntArray(string.length + 1)
+    units[0] = string.length
+    string.forEachIndexed { index, char ->
+      units[index + 1] = char.code
+    }
+    return units
+  }
+
+  private fun encodeSevenBit(string: String): IntArray {
+    val units = ArrayList<Int>(string.length + 1)
+    units.addSevenBitUnits(string.length)
+    string.forEach { units.addSevenBitUnits(it.code) }
+    return units.toIntArray()
   }
 }
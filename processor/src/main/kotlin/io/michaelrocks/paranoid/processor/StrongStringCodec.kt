@@ -0,0 +1,51 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.mirrors.toAsmType
+import org.objectweb.asm.commons.GeneratorAdapter
+import org.objectweb.asm.commons.Method
+import java.security.MessageDigest
+
+class StrongStringCodec : StringCodec {
+  override fun createStringRegistry(seed: Int): StringRegistry {
+    return StrongStringRegistry(createKey(seed))
+  }
+
+  override fun newStringDecoder(generator: GeneratorAdapter, seed: Int) {
+    // The key is stored as a string with a byte in every char, like the string pool.
+    val key = createKey(seed)
+    generator.newInstance(STRONG_STRING_DECODER_TYPE.toAsmType())
+    generator.dup()
+    generator.push(String(CharArray(key.size) { (key[it].toInt() and 0xff).toChar() }))
+    generator.invokeConstructor(STRONG_STRING_DECODER_TYPE.toAsmType(), METHOD_KEY_CONSTRUCTOR)
+  }
+
+  private fun createKey(seed: Int): ByteArray {
+    val digest = MessageDigest.getInstance("SHA-256")
+    digest.update(KEY_SALT.toByteArray())
+    digest.update(byteArrayOf((seed ushr 24).toByte(), (seed ushr 16).toByte(), (seed ushr 8).toByte(), seed.toByte()))
+    return digest.digest().copyOf(KEY_SIZE)
+  }
+
+  companion object {
+    private val METHOD_KEY_CONSTRUCTOR = Method("<init>", "(Ljava/lang/String;)V")
+
+    private const val KEY_SALT = "io.michaelrocks.paranoid.StrongStringDecoder"
+    private const val KEY_SIZE = 16
+  }
+}
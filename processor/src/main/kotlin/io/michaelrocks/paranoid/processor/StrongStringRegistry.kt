@@ -0,0 +1,85 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import io.michaelrocks.paranoid.DeobfuscatorHelper
+import io.michaelrocks.paranoid.StrongStringDecoder
+import java.io.ByteArrayOutputStream
+import javax.crypto.Cipher
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+class StrongStringRegistry(private val key: ByteArray) : StringRegistry {
+  private val bytes = ByteArrayOutputStream()
+  private val idsByString = HashMap<String, Long>()
+  private var duplicateStringCount = 0
+  private var duplicateStringLength = 0L
+
+  override fun registerString(string: String): Long {
+    val existingId = idsByString[string]
+    if (existingId != null) {
+      duplicateStringCount += 1
+      duplicateStringLength += string.length
+      return existingId
+    }
+
+    val id = (bytes.size().toLong() shl 32) or string.length.toLong()
+    string.forEach { char ->
+      bytes.write(char.code ushr 8)
+      bytes.write(char.code)
+    }
+    idsByString[string] = id
+    return id
+  }
+
+  override fun registerStrings(strings: List<String>): Long? {
+    return null
+  }
+
+  override fun getStringCount(): Int {
+    return idsByString.size
+  }
+
+  override fun getRegisteredStrings(): Collection<String> {
+    return idsByString.keys
+  }
+
+  override fun getDuplicateStringCount(): Int {
+    return duplicateStringCount
+  }
+
+  override fun getDuplicateStringLength(): Long {
+    return duplicateStringLength
+  }
+
+  override fun getSharedStringLength(): Long {
+    return 0L
+  }
+
+  override fun getAllChunks(): List<String> {
+    // The whole pool is a single counter mode stream, so a decoder can start at the block a string begins in.
+    val cipher = Cipher.getInstance(StrongStringDecoder.TRANSFORMATION)
+    cipher.init(Cipher.ENCRYPT_MODE, SecretKeySpec(key, "AES"), IvParameterSpec(StrongStringDecoder.getCounterBlock(0)))
+    val encrypted = cipher.doFinal(bytes.toByteArray())
+    val pool = String(CharArray(encrypted.size) { (encrypted[it].toInt() and 0xff).toChar() })
+    return pool.chunked(DeobfuscatorHelper.MAX_CHUNK_LENGTH)
+  }
+
+  override fun getOffsetChunks(): List<String> {
+    return emptyList()
+  }
+}
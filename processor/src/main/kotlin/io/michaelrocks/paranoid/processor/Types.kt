@@ -17,9 +17,36 @@
 package io.michaelrocks.paranoid.processor
 
 import com.joom.grip.mirrors.getObjectType
+import io.michaelrocks.paranoid.ArrayStringCache
+import io.michaelrocks.paranoid.ChunkLoader
 import io.michaelrocks.paranoid.DeobfuscatorHelper
+import io.michaelrocks.paranoid.DeobfuscatorWarmUp
+import io.michaelrocks.paranoid.FastStringDecoder
+import io.michaelrocks.paranoid.LruStringCache
 import io.michaelrocks.paranoid.Obfuscate
+import io.michaelrocks.paranoid.SoftStringCache
+import io.michaelrocks.paranoid.StringAccessRecorder
+import io.michaelrocks.paranoid.StringCache
+import io.michaelrocks.paranoid.StringDecoder
+import io.michaelrocks.paranoid.StringPool
+import io.michaelrocks.paranoid.StrongStringDecoder
+import io.michaelrocks.paranoid.UnboundedStringCache
+import java.util.concurrent.Executor
 
 val OBJECT_TYPE = getObjectType<Any>()
+val RUNNABLE_TYPE = getObjectType<Runnable>()
+val EXECUTOR_TYPE = getObjectType<Executor>()
 val OBFUSCATE_TYPE = getObjectType<Obfuscate>()
 val DEOBFUSCATOR_HELPER_TYPE = getObjectType<DeobfuscatorHelper>()
+val CHUNK_LOADER_TYPE = getObjectType<ChunkLoader>()
+val STRING_CACHE_TYPE = getObjectType<StringCache>()
+val UNBOUNDED_STRING_CACHE_TYPE = getObjectType<UnboundedStringCache>()
+val LRU_STRING_CACHE_TYPE = getObjectType<LruStringCache>()
+val SOFT_STRING_CACHE_TYPE = getObjectType<SoftStringCache>()
+val ARRAY_STRING_CACHE_TYPE = getObjectType<ArrayStringCache>()
+val STRING_DECODER_TYPE = getObjectType<StringDecoder>()
+val STRING_POOL_TYPE = getObjectType<StringPool>()
+val FAST_STRING_DECODER_TYPE = getObjectType<FastStringDecoder>()
+val STRONG_STRING_DECODER_TYPE = getObjectType<StrongStringDecoder>()
+val DEOBFUSCATOR_WARM_UP_TYPE = getObjectType<DeobfuscatorWarmUp>()
+val STRING_ACCESS_RECORDER_TYPE = getObjectType<StringAccessRecorder>()
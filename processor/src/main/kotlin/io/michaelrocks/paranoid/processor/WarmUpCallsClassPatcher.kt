@@ -0,0 +1,60 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.mirrors.Type
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+
+class WarmUpCallsClassPatcher(
+  private val warmUpType: Type.Object,
+  asmApi: Int,
+  delegate: ClassVisitor,
+) : ClassVisitor(asmApi, delegate) {
+
+  override fun visitMethod(
+    access: Int,
+    name: String,
+    desc: String,
+    signature: String?,
+    exceptions: Array<out String>?
+  ): MethodVisitor {
+    val visitor = super.visitMethod(access, name, desc, signature, exceptions)
+    return object : MethodVisitor(api, visitor) {
+      override fun visitMethodInsn(
+        opcode: Int,
+        owner: String,
+        methodName: String,
+        methodDesc: String,
+        isInterface: Boolean
+      ) {
+        if (isWarmUpCall(opcode, owner)) {
+          super.visitMethodInsn(opcode, warmUpType.internalName, methodName, methodDesc, false)
+        } else {
+          super.visitMethodInsn(opcode, owner, methodName, methodDesc, isInterface)
+        }
+      }
+    }
+  }
+
+  companion object {
+    fun isWarmUpCall(opcode: Int, owner: String): Boolean {
+      return opcode == Opcodes.INVOKESTATIC && owner == DEOBFUSCATOR_WARM_UP_TYPE.internalName
+    }
+  }
+}
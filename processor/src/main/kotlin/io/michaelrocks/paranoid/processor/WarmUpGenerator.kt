@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.ClassRegistry
+import com.joom.grip.mirrors.Type
+import com.joom.grip.mirrors.toAsmType
+import io.michaelrocks.paranoid.processor.model.Deobfuscator
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.Opcodes.ACC_FINAL
+import org.objectweb.asm.Opcodes.ACC_PUBLIC
+import org.objectweb.asm.Opcodes.ACC_SUPER
+import org.objectweb.asm.commons.Method
+
+// Generates a class that replaces DeobfuscatorWarmUp and warms up every deobfuscator that has strings to warm up.
+class WarmUpGenerator(
+  private val type: Type.Object,
+  private val deobfuscators: List<Deobfuscator>,
+  private val classRegistry: ClassRegistry
+) {
+
+  fun generateWarmUp(): ByteArray {
+    val writer = StandaloneClassWriter(ClassWriter.COMPUTE_MAXS or ClassWriter.COMPUTE_FRAMES, classRegistry)
+    writer.visit(
+      Opcodes.V1_6,
+      ACC_PUBLIC or ACC_FINAL or ACC_SUPER,
+      type.internalName,
+      null,
+      OBJECT_TYPE.internalName,
+      arrayOf(RUNNABLE_TYPE.internalName)
+    )
+
+    writer.generateDefaultConstructor()
+    writer.generateWarmUpMethod()
+    writer.generatePrefetchMethod()
+    writer.generateRunMethod()
+
+    writer.visitEnd()
+    return writer.toByteArray()
+  }
+
+  private fun ClassVisitor.generateDefaultConstructor() {
+    newMethod(Opcodes.ACC_PUBLIC, METHOD_DEFAULT_CONSTRUCTOR) {
+      loadThis()
+      invokeConstructor(OBJECT_TYPE.toAsmType(), METHOD_DEFAULT_CONSTRUCTOR)
+    }
+  }
+
+  private fun ClassVisitor.generateWarmUpMethod() {
+    newMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, METHOD_WARM_UP) {
+      deobfuscators.forEach { deobfuscator ->
+        invokeStatic(deobfuscator.type.toAsmType(), deobfuscator.warmUpMethod)
+      }
+    }
+  }
+
+  private fun ClassVisitor.generatePrefetchMethod() {
+    newMethod(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, METHOD_PREFETCH) {
+      loadArg(0)
+      newInstance(type.toAsmType())
+      dup()
+      invokeConstructor(type.toAsmType(), METHOD_DEFAULT_CONSTRUCTOR)
+      invokeInterface(EXECUTOR_TYPE.toAsmType(), METHOD_EXECUTE)
+    }
+  }
+
+  private fun ClassVisitor.generateRunMethod() {
+    newMethod(Opcodes.ACC_PUBLIC, METHOD_RUN) {
+      invokeStatic(type.toAsmType(), METHOD_WARM_UP)
+    }
+  }
+
+  companion object {
+    private val METHOD_DEFAULT_CONSTRUCTOR = Method("<init>", "()V")
+    private val METHOD_WARM_UP = Method("warmUp", "()V")
+    private val METHOD_PREFETCH = Method("prefetch", "(Ljava/util/concurrent/Executor;)V")
+    private val METHOD_RUN = Method("run", "()V")
+    private val METHOD_EXECUTE = Method("execute", "(Ljava/lang/Runnable;)V")
+  }
+}
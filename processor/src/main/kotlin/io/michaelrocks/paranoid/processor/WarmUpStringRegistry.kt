@@ -0,0 +1,38 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+// Records strings registered by a class that is warmed up, so the deobfuscator can decode them in advance.
+class WarmUpStringRegistry(
+  private val delegate: StringRegistry,
+  private val warmUpStrings: MutableMap<Long, String>,
+  private val isWarmUpString: (String) -> Boolean = { true }
+) : StringRegistry by delegate {
+
+  override fun registerString(string: String): Long {
+    val id = delegate.registerString(string)
+    if (isWarmUpString(string)) {
+      warmUpStrings[id] = string
+    }
+    return id
+  }
+
+  override fun registerStrings(strings: List<String>): Long? {
+    // Strings that are decoded together don't have ids of their own, so they're registered one by one instead.
+    return if (strings.any(isWarmUpString)) null else delegate.registerStrings(strings)
+  }
+}
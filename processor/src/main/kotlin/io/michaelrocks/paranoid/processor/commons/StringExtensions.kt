@@ -0,0 +1,29 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor.commons
+
+fun String.getModifiedUtf8Length(): Int {
+  var length = 0
+  forEach { char ->
+    length += when (char.code) {
+      in 0x01..0x7f -> 1
+      in 0x80..0x7ff, 0 -> 2
+      else -> 3
+    }
+  }
+  return length
+}
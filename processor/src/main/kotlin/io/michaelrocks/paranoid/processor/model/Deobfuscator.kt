@@ -21,5 +21,21 @@ import org.objectweb.asm.commons.Method
 
 data class Deobfuscator(
   val type: Type.Object,
-  val deobfuscationMethod: Method
+  val deobfuscationMethod: Method,
+  val bulkDeobfuscationMethod: Method,
+  val stringIdFormat: StringIdFormat,
+  // Compares a string with an object the way String.equals() does.
+  val equalsMethod: Method,
+  // Compares a string with a nullable char sequence by their content.
+  val contentEqualsMethod: Method,
+  // Appends a string to a StringBuilder and returns the builder.
+  val appendMethod: Method,
+  // Returns a Reader that decodes chars of a string when they're read.
+  val readerMethod: Method,
+  // Returns the length of a string without decoding it.
+  val lengthMethod: Method,
+  // Decodes a string into a char array at an offset and returns its length.
+  val getCharsMethod: Method,
+  // Decodes strings of classes that are warmed up, so they're cached before they're requested.
+  val warmUpMethod: Method
 )
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor.model
+
+sealed class StringCachePolicy {
+  object None : StringCachePolicy() {
+    override fun toString(): String = "None"
+  }
+
+  object Unbounded : StringCachePolicy() {
+    override fun toString(): String = "Unbounded"
+  }
+
+  data class Lru(val capacity: Int) : StringCachePolicy()
+
+  object Soft : StringCachePolicy() {
+    override fun toString(): String = "Soft"
+  }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor.model
+
+enum class StringEncoding {
+  // Every char of a string is encrypted into a 16-bit char of the pool.
+  UTF16,
+  // Every char of a string is encrypted into one or more 7-bit chars of the pool, so ASCII strings take a byte per char
+  // in the modified UTF-8 of a class file or a DEX file.
+  SEVEN_BIT,
+  // Strings are encoded like SEVEN_BIT, but the pool is split into blocks that are compressed before encryption and
+  // decompressed when a string of a block is requested for the first time.
+  DEFLATE
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor.model
+
+import io.michaelrocks.paranoid.DeobfuscatorHelper
+
+enum class StringIdFormat(val version: Int) {
+  // A long id with the seed and the encrypted position of a string in the pool.
+  MASKED(DeobfuscatorHelper.ID_FORMAT_MASKED),
+  // An int index of a string in an offset table, which is generated with the pool.
+  INDEXED(DeobfuscatorHelper.ID_FORMAT_INDEXED)
+}
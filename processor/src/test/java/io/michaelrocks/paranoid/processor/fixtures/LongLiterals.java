@@ -0,0 +1,47 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor.fixtures;
+
+import java.io.Reader;
+import java.io.StringReader;
+
+// Literals of this class are replaced with ones that don't fit into a single chunk of the pool before it's patched.
+public class LongLiterals {
+  public static Reader createReader() {
+    return new StringReader("Long literal");
+  }
+
+  public static int measureLiteral() {
+    return "Long literal".length();
+  }
+
+  public static String appendToBuilder(final StringBuilder builder) {
+    return builder.append("Long literal").toString();
+  }
+
+  public static boolean literalEqualsValue(final Object value) {
+    return "Long literal".equals(value);
+  }
+
+  public static String getLiteral() {
+    return "Long literal";
+  }
+
+  public static String getColdLiteral() {
+    return "Long cold literal";
+  }
+}
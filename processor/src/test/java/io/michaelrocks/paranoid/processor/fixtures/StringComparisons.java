@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor.fixtures;
+
+import java.util.Objects;
+
+public class StringComparisons {
+  private static String field;
+
+  public static boolean literalEqualsValue(final Object value) {
+    return "Compared literal".equals(value);
+  }
+
+  public static boolean valueEqualsLiteral(final String value) {
+    return value.equals("Compared literal");
+  }
+
+  public static boolean fieldEqualsLiteral(final String value) {
+    field = value;
+    return field.equals("Compared literal");
+  }
+
+  public static boolean returnedValueEqualsLiteral(final String value) {
+    return identity(value).equals("Compared literal");
+  }
+
+  public static boolean objectsEqualsLiteralFirst(final Object value) {
+    return Objects.equals("Compared literal", value);
+  }
+
+  public static boolean objectsEqualsLiteralSecond(final Object value) {
+    return Objects.equals(value, "Compared literal");
+  }
+
+  public static boolean objectsEqualsReturnedValueFirst(final Object value) {
+    return Objects.equals(identity(value), "Compared literal");
+  }
+
+  public static boolean objectsEqualsReturnedValueSecond(final Object value) {
+    return Objects.equals("Compared literal", identity(value));
+  }
+
+  private static <T> T identity(final T value) {
+    return value;
+  }
+
+  // Objects.equals() calls equals() of its first argument, so this object is equal to a string there.
+  public static class AlwaysEqual {
+    @Override
+    public boolean equals(final Object other) {
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor.fixtures;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+public class StringReaders {
+  public static Reader createReader() {
+    return new StringReader("Returned reader");
+  }
+
+  public static StringReader createStringReader() {
+    return new StringReader("Returned string reader");
+  }
+
+  public static String readPassedReader() throws IOException {
+    return readAll(new StringReader("Passed reader"));
+  }
+
+  public static String readLocalReader() throws IOException {
+    final StringReader reader = new StringReader("Local reader");
+    try {
+      return readAll(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  public static String readAll(final Reader reader) throws IOException {
+    final StringBuilder builder = new StringBuilder();
+    int c;
+    while ((c = reader.read()) != -1) {
+      builder.append((char) c);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor.fixtures;
+
+import io.michaelrocks.paranoid.DeobfuscatorWarmUp;
+
+import java.util.concurrent.Executor;
+
+public class WarmUpCalls {
+  public static void warmUp() {
+    DeobfuscatorWarmUp.warmUp();
+  }
+
+  public static void prefetch(final Executor executor) {
+    DeobfuscatorWarmUp.prefetch(executor);
+  }
+
+  public static String getString() {
+    return String.valueOf(42);
+  }
+}
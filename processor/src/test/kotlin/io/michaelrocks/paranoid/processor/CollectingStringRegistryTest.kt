@@ -0,0 +1,90 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import io.michaelrocks.paranoid.processor.model.PoolLayout
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+
+class CollectingStringRegistryTest {
+  private val registry = CollectingStringRegistry().apply {
+    register("com/example/ui/Screen", "Screen title", "Shared")
+    register("com/example/data/Repository", "Repository query")
+    register("com/example/ui/Button", "Button label", "Shared")
+    register("com/example/ui/Screen\$Header", "Header title")
+    register("com/example/data/Cache", "Cache key")
+  }
+
+  @Test
+  fun laysOutStringsInRegistrationOrder() {
+    assertEquals(
+      listOf("Screen title", "Shared", "Repository query", "Button label", "Header title", "Cache key"),
+      registry.getStrings(PoolLayout.None).toList()
+    )
+  }
+
+  @Test
+  fun laysOutStringsOfClassTogether() {
+    // A nested class follows its outer class, and a string shared by classes is stored with the first of them.
+    assertEquals(
+      listOf("Cache key", "Repository query", "Button label", "Shared", "Screen title", "Header title"),
+      registry.getStrings(PoolLayout.ByClass).toList()
+    )
+  }
+
+  @Test
+  fun laysOutStringsOfPackageTogether() {
+    // Classes of a package keep the order their strings have been registered in.
+    assertEquals(
+      listOf("Repository query", "Cache key", "Screen title", "Shared", "Button label", "Header title"),
+      registry.getStrings(PoolLayout.ByPackage).toList()
+    )
+  }
+
+  @Test
+  fun laysOutStringsInAccessOrderOfClasses() {
+    val layout = PoolLayout.ByAccessOrder(
+      listOf("com.example.ui.Button", "com.example.data.Cache", "com.example.ui.Button", "com.example.Unknown")
+    )
+
+    // Classes that haven't been accessed follow the accessed ones in registration order.
+    assertEquals(
+      listOf("Button label", "Shared", "Cache key", "Screen title", "Repository query", "Header title"),
+      registry.getStrings(layout).toList()
+    )
+  }
+
+  @Test
+  fun registersStringsOneByOne() {
+    registry.owner = getObjectTypeByInternalName("com/example/Bulk")
+
+    assertNull(registry.registerStrings(listOf("First", "Second")))
+    assertEquals(6, registry.getStringCount())
+  }
+
+  @Test(expected = IllegalStateException::class)
+  fun rejectsStringWithoutOwner() {
+    CollectingStringRegistry().registerString("Orphan")
+  }
+
+  private fun CollectingStringRegistry.register(internalName: String, vararg strings: String) {
+    owner = getObjectTypeByInternalName(internalName)
+    strings.forEach { registerString(it) }
+  }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.GripFactory
+import io.michaelrocks.paranoid.ChunkLoader
+import io.michaelrocks.paranoid.DeobfuscatorHelper
+import io.michaelrocks.paranoid.StringPool
+import io.michaelrocks.paranoid.processor.PatchedClassLoader.Companion.ASM_API
+import io.michaelrocks.paranoid.processor.model.CipherMode
+import io.michaelrocks.paranoid.processor.model.Deobfuscator
+import io.michaelrocks.paranoid.processor.model.StringCachePolicy
+import io.michaelrocks.paranoid.processor.model.StringEncoding
+import io.michaelrocks.paranoid.processor.model.StringIdFormat
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import org.objectweb.asm.commons.Method
+import java.io.File
+import java.io.Reader
+
+// Generates deobfuscators for every string pool format, loads them and calls their methods the way patched classes do.
+class DeobfuscatorGeneratorTest {
+  @Test
+  fun decodesUtf16Strings() {
+    assertDeobfuscator(Configuration())
+  }
+
+  @Test
+  fun decodesIndexedUtf16Strings() {
+    assertDeobfuscator(Configuration(idFormat = StringIdFormat.INDEXED))
+  }
+
+  @Test
+  fun decodesUtf16StringsWithCounterCipher() {
+    assertDeobfuscator(Configuration(cipherMode = CipherMode.COUNTER))
+    assertDeobfuscator(Configuration(idFormat = StringIdFormat.INDEXED, cipherMode = CipherMode.COUNTER))
+  }
+
+  @Test
+  fun decodesSevenBitStrings() {
+    assertDeobfuscator(Configuration(StringEncoding.SEVEN_BIT))
+    assertDeobfuscator(Configuration(StringEncoding.SEVEN_BIT, StringIdFormat.INDEXED))
+  }
+
+  @Test
+  fun decodesDeflatedStrings() {
+    assertDeobfuscator(Configuration(StringEncoding.DEFLATE))
+    assertDeobfuscator(Configuration(StringEncoding.DEFLATE, StringIdFormat.INDEXED))
+  }
+
+  @Test
+  fun decodesPackedStrings() {
+    StringEncoding.values().forEach { encoding ->
+      assertDeobfuscator(Configuration(encoding, poolPacking = true))
+    }
+  }
+
+  @Test
+  fun decodesStringsOfCodecs() {
+    assertDeobfuscator(Configuration(stringCodec = FastStringCodec()))
+    assertDeobfuscator(Configuration(stringCodec = StrongStringCodec()))
+  }
+
+  @Test
+  fun decodesStringsThroughCache() {
+    val cachePolicy = StringCachePolicy.Unbounded
+    assertDeobfuscator(Configuration(stringCachePolicy = cachePolicy))
+    assertDeobfuscator(Configuration(idFormat = StringIdFormat.INDEXED, stringCachePolicy = cachePolicy))
+    assertDeobfuscator(Configuration(stringCodec = FastStringCodec(), stringCachePolicy = StringCachePolicy.Lru(2)))
+  }
+
+  @Test
+  fun loadsChunksOnFirstAccess() {
+    val configuration = Configuration()
+    val stringRegistry = configuration.createStringRegistry()
+    val ids = STRINGS.map { stringRegistry.registerString(it) }
+    val deobfuscator = createDeobfuscator(configuration.idFormat)
+    val deobfuscatorClass = generateDeobfuscator(configuration, deobfuscator, stringRegistry)
+    val chunks = deobfuscatorClass.getDeclaredField("chunks").run {
+      isAccessible = true
+      get(null) as Array<*>
+    }
+
+    // The last string is too long for a single chunk.
+    val allChunks = stringRegistry.getAllChunks()
+    assertEquals(2, allChunks.size)
+    assertEquals(listOf(null, null), chunks.toList())
+    assertEquals(STRINGS[1], deobfuscatorClass.invoke(deobfuscator.deobfuscationMethod, ids[1]))
+    assertNotNull(chunks[0])
+    assertNull(chunks[1])
+    assertEquals(STRINGS.last(), deobfuscatorClass.invoke(deobfuscator.deobfuscationMethod, ids.last()))
+    assertEquals(allChunks, chunks.toList())
+
+    val chunkLoader = deobfuscatorClass.getDeclaredConstructor().newInstance() as ChunkLoader
+    allChunks.forEachIndexed { index, chunk -> assertEquals(chunk, chunkLoader.loadChunk(index)) }
+    assertThrows(IllegalArgumentException::class.java) { chunkLoader.loadChunk(allChunks.size) }
+  }
+
+  private fun assertDeobfuscator(configuration: Configuration) {
+    val stringRegistry = configuration.createStringRegistry()
+    val ids = STRINGS.map { stringRegistry.registerString(it) }
+    val bulkId = stringRegistry.registerStrings(STRINGS)
+    val deobfuscator = createDeobfuscator(configuration.idFormat)
+    val deobfuscatorClass = generateDeobfuscator(configuration, deobfuscator, stringRegistry)
+
+    STRINGS.forEachIndexed { index, string ->
+      val id = if (configuration.idFormat == StringIdFormat.INDEXED) ids[index].toInt() else ids[index]
+      val decodedString = deobfuscatorClass.invoke(deobfuscator.deobfuscationMethod, id)
+      assertEquals(configuration.toString(), string, decodedString)
+      if (configuration.stringCachePolicy != StringCachePolicy.None) {
+        assertSame(decodedString, deobfuscatorClass.invoke(deobfuscator.deobfuscationMethod, id))
+      }
+
+      assertEquals(true, deobfuscatorClass.invoke(deobfuscator.equalsMethod, id, String(string.toCharArray())))
+      assertEquals(false, deobfuscatorClass.invoke(deobfuscator.equalsMethod, id, StringBuilder(string)))
+      assertEquals(false, deobfuscatorClass.invoke(deobfuscator.equalsMethod, id, null))
+      assertEquals(true, deobfuscatorClass.invoke(deobfuscator.contentEqualsMethod, id, StringBuilder(string)))
+      assertEquals(false, deobfuscatorClass.invoke(deobfuscator.contentEqualsMethod, id, "$string!"))
+      assertEquals(false, deobfuscatorClass.invoke(deobfuscator.contentEqualsMethod, id, null))
+
+      val builder = StringBuilder("Prefix")
+      assertSame(builder, deobfuscatorClass.invoke(deobfuscator.appendMethod, builder, id))
+      assertEquals("Prefix$string", builder.toString())
+
+      assertEquals(string.length, deobfuscatorClass.invoke(deobfuscator.lengthMethod, id))
+      val dest = CharArray(string.length + 1) { '#' }
+      assertEquals(string.length, deobfuscatorClass.invoke(deobfuscator.getCharsMethod, id, dest, 1))
+      assertEquals("#$string", String(dest))
+
+      val reader = deobfuscatorClass.invoke(deobfuscator.readerMethod, id) as Reader
+      assertEquals(string, reader.readText())
+    }
+
+    val hasBulkMethod = deobfuscatorClass.declaredMethods.any { it.name == deobfuscator.bulkDeobfuscationMethod.name }
+    assertEquals(bulkId != null, hasBulkMethod)
+    if (bulkId != null) {
+      val strings = deobfuscatorClass.invoke(deobfuscator.bulkDeobfuscationMethod, bulkId, STRINGS.size)
+      assertArrayEquals(STRINGS.toTypedArray(), strings as Array<*>)
+    }
+  }
+
+  private fun Class<*>.invoke(method: Method, vararg arguments: Any?): Any? {
+    return invokeStatic(method.name, *arguments)
+  }
+
+  private fun generateDeobfuscator(
+    configuration: Configuration,
+    deobfuscator: Deobfuscator,
+    stringRegistry: StringRegistry
+  ): Class<*> {
+    val classPath = File(StringPool::class.java.protectionDomain.codeSource.location.toURI())
+    val grip = GripFactory.newInstance(ASM_API).create(listOf(classPath))
+    val bytes = DeobfuscatorGenerator(
+      deobfuscator,
+      stringRegistry,
+      grip.classRegistry,
+      configuration.stringCachePolicy,
+      configuration.encoding,
+      SEED,
+      configuration.poolPacking,
+      configuration.cipherMode,
+      configuration.stringCodec
+    ).generateDeobfuscator()
+    val loader = PatchedClassLoader(mapOf(deobfuscator.type.className to bytes))
+    return Class.forName(deobfuscator.type.className, true, loader)
+  }
+
+  private fun createDeobfuscator(idFormat: StringIdFormat): Deobfuscator {
+    return createDeobfuscator("io/michaelrocks/paranoid/processor/GeneratedDeobfuscator", idFormat)
+  }
+
+  private data class Configuration(
+    val encoding: StringEncoding = StringEncoding.UTF16,
+    val idFormat: StringIdFormat = StringIdFormat.MASKED,
+    val cipherMode: CipherMode = CipherMode.CHAINED,
+    val poolPacking: Boolean = false,
+    val stringCodec: StringCodec? = null,
+    val stringCachePolicy: StringCachePolicy = StringCachePolicy.None
+  ) {
+    fun createStringRegistry(): StringRegistry {
+      return when {
+        stringCodec != null -> stringCodec.createStringRegistry(SEED)
+        poolPacking -> PackedStringRegistry(SEED, STRINGS, encoding)
+        else -> StringRegistryImpl(SEED, encoding, idFormat = idFormat, cipherMode = cipherMode)
+      }
+    }
+  }
+
+  companion object {
+    private const val SEED = 0x6e7a
+
+    private val STRINGS = listOf(
+      "",
+      "Hello, World!",
+      "Café ÿ\u0080\u007f",
+      "Привет, мир",
+      (0 until DeobfuscatorHelper.MAX_CHUNK_LENGTH + 5).map { 'a' + it % 26 }.joinToString("")
+    )
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.mirrors.Type
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import io.michaelrocks.paranoid.processor.model.ObfuscationTier
+import io.michaelrocks.paranoid.processor.model.ShardingPolicy
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class DeobfuscatorRegistryImplTest {
+  private val shardIndices = ArrayList<Int>()
+  private val shardTiers = ArrayList<ObfuscationTier>()
+
+  @Test
+  fun putsAllClassesToSingleShardWithoutSharding() {
+    val registry = createRegistry(ShardingPolicy.None)
+
+    assertEquals(listOf(0), shardIndices)
+    assertEquals(0, registry.getShardIndex("Root"))
+    assertEquals(0, registry.getShardIndex("com/example/Main"))
+  }
+
+  @Test
+  fun mapsClassesToShardOfLongestPackagePrefix() {
+    val registry = createRegistry(ShardingPolicy.ByPackage(listOf("com.example", "com.example.feature.", "org")))
+
+    assertEquals(listOf(0, 1, 2, 3), shardIndices)
+    assertEquals(1, registry.getShardIndex("com/example/Main"))
+    assertEquals(2, registry.getShardIndex("com/example/feature/Feature"))
+    assertEquals(2, registry.getShardIndex("com/example/feature/nested/Nested"))
+    assertEquals(1, registry.getShardIndex("com/example/features/Features"))
+    assertEquals(3, registry.getShardIndex("org/Library"))
+    // The first shard is reserved for classes that don't match any prefix.
+    assertEquals(0, registry.getShardIndex("com/examples/Examples"))
+    assertEquals(0, registry.getShardIndex("Root"))
+  }
+
+  @Test
+  fun mapsClassesToShardOfEmptyPrefixWhenNoOtherPrefixMatches() {
+    val registry = createRegistry(ShardingPolicy.ByPackage(listOf("", "com.example")))
+
+    assertEquals(listOf(0, 1, 2), shardIndices)
+    assertEquals(1, registry.getShardIndex("Root"))
+    assertEquals(1, registry.getShardIndex("org/Library"))
+    assertEquals(2, registry.getShardIndex("com/example/Main"))
+  }
+
+  @Test
+  fun mapsClassesOfSamePackageToSameShard() {
+    val shardCount = 4
+    val registry = createRegistry(ShardingPolicy.ByCount(shardCount))
+
+    assertEquals(List(shardCount) { it }, shardIndices)
+    // The hash code of the last package is negative, but it's still mapped to one of the shards.
+    PACKAGES.forEach { packageName ->
+      val shardIndex = registry.getShardIndex("$packageName/First")
+      assertEquals(Math.floorMod(packageName.hashCode(), shardCount), shardIndex)
+      assertEquals(shardIndex, registry.getShardIndex("$packageName/Second"))
+    }
+  }
+
+  @Test
+  fun mapsClassesOfEveryTierToShardOfTheirOwn() {
+    val tiersByType = mapOf(
+      getObjectTypeByInternalName("com/example/Strong") to ObfuscationTier.STRONG,
+      getObjectTypeByInternalName("com/example/Default") to ObfuscationTier.DEFAULT,
+      getObjectTypeByInternalName("org/library/Strong") to ObfuscationTier.STRONG,
+      getObjectTypeByInternalName("org/library/Fast") to ObfuscationTier.FAST
+    )
+    val registry = createRegistry(ShardingPolicy.ByPackage(listOf("com.example")), tiersByType)
+
+    // Tier shards follow the regular ones in the order of tiers.
+    assertEquals(listOf(0, 1, 2, 3), shardIndices)
+    assertEquals(
+      listOf(ObfuscationTier.DEFAULT, ObfuscationTier.DEFAULT, ObfuscationTier.FAST, ObfuscationTier.STRONG),
+      shardTiers
+    )
+    assertEquals(3, registry.getShardIndex("com/example/Strong"))
+    assertEquals(3, registry.getShardIndex("org/library/Strong"))
+    assertEquals(2, registry.getShardIndex("org/library/Fast"))
+    assertEquals(1, registry.getShardIndex("com/example/Default"))
+    assertEquals(0, registry.getShardIndex("org/library/Default"))
+  }
+
+  @Test
+  fun doesNotCreateShardsForUnusedTiers() {
+    val tiersByType = mapOf(getObjectTypeByInternalName("com/example/Default") to ObfuscationTier.DEFAULT)
+    val registry = createRegistry(ShardingPolicy.ByCount(2), tiersByType)
+
+    assertEquals(listOf(0, 1), shardIndices)
+    assertEquals(listOf(ObfuscationTier.DEFAULT, ObfuscationTier.DEFAULT), shardTiers)
+    assertEquals(2, registry.shards.size)
+  }
+
+  private fun createRegistry(
+    shardingPolicy: ShardingPolicy,
+    tiersByType: Map<Type.Object, ObfuscationTier> = emptyMap()
+  ): DeobfuscatorRegistry {
+    return DeobfuscatorRegistryImpl(shardingPolicy, tiersByType) { index, tier ->
+      shardIndices += index
+      shardTiers += tier
+      DeobfuscatorShard(TestDeobfuscator.createDeobfuscator(), CollectingStringRegistry())
+    }
+  }
+
+  private fun DeobfuscatorRegistry.getShardIndex(internalName: String): Int {
+    return shards.indexOf(getShard(getObjectTypeByInternalName(internalName)))
+  }
+
+  companion object {
+    private val PACKAGES = listOf("com/example", "com/example/feature", "org/library", "com/example/ui/settings")
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.GripFactory
+import com.joom.grip.mirrors.getObjectType
+import io.michaelrocks.paranoid.processor.PatchedClassLoader.Companion.ASM_API
+import io.michaelrocks.paranoid.processor.PatchedClassLoader.Companion.patchClass
+import io.michaelrocks.paranoid.processor.fixtures.LazyConstants
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.Type
+import org.objectweb.asm.commons.GeneratorAdapter
+import org.objectweb.asm.commons.Method
+import java.io.File
+import java.lang.reflect.Modifier
+
+class LazyConstantsTest {
+  private val type = getObjectType<LazyConstants>()
+  private val configuration = ClassConfiguration(
+    type,
+    linkedMapOf(
+      PRIVATE_CONSTANT to "Private constant",
+      PACKAGE_CONSTANT to "Package constant",
+      PROTECTED_CONSTANT to "Protected constant",
+      PUBLIC_CONSTANT to "Public constant"
+    )
+  )
+  private val constantAccessorRegistry = run {
+    val classPath = File(LazyConstants::class.java.protectionDomain.codeSource.location.toURI())
+    val grip = GripFactory.newInstance(ASM_API).create(listOf(classPath))
+    ConstantAccessorRegistryImpl(AnalysisResult(mapOf(type to configuration)), grip.classRegistry)
+  }
+
+  @Test
+  fun createsAccessorsOnlyForPrivateAndPackagePrivateConstants() {
+    assertNotNull(constantAccessorRegistry.getAccessor(configuration, PRIVATE_CONSTANT))
+    assertNotNull(constantAccessorRegistry.getAccessor(configuration, PACKAGE_CONSTANT))
+    assertNull(constantAccessorRegistry.getAccessor(configuration, PROTECTED_CONSTANT))
+    assertNull(constantAccessorRegistry.getAccessor(configuration, PUBLIC_CONSTANT))
+
+    assertNotNull(constantAccessorRegistry.findAccessor(type.internalName, PACKAGE_CONSTANT, STRING_DESCRIPTOR))
+    assertNull(constantAccessorRegistry.findAccessor(type.internalName, PUBLIC_CONSTANT, STRING_DESCRIPTOR))
+  }
+
+  @Test
+  fun decodesLazyConstantsWhenTheyAreRead() {
+    val fixture = PatchingFixture(SEED)
+    val constantsBytes = patchClass(LazyConstants::class.java) { writer ->
+      val constantsPatcher = StringConstantsClassPatcher(
+        configuration,
+        fixture.deobfuscator,
+        fixture.stringRegistry,
+        constantAccessorRegistry,
+        ASM_API,
+        fixture.createLiteralsPatcher(writer)
+      )
+      ConstantReadsClassPatcher(constantAccessorRegistry, ASM_API, constantsPatcher)
+    }
+    val readerBytes = patchClass(generateConstantReader()) { writer ->
+      ConstantReadsClassPatcher(constantAccessorRegistry, ASM_API, writer)
+    }
+    fixture.loadStrings()
+
+    val loader = PatchedClassLoader(mapOf(LazyConstants::class.java.name to constantsBytes, READER_NAME to readerBytes))
+    val constantsClass = Class.forName(LazyConstants::class.java.name, true, loader)
+    val readerClass = loader.loadClass(READER_NAME)
+
+    // Public and protected constants are decoded eagerly by a single call and stay final.
+    assertEquals(2, TestDeobfuscator.decodedStringCount)
+    assertEagerConstant(constantsClass, PUBLIC_CONSTANT, "Public constant")
+    assertEagerConstant(constantsClass, PROTECTED_CONSTANT, "Protected constant")
+    assertLazyConstant(constantsClass, PRIVATE_CONSTANT, null)
+    assertLazyConstant(constantsClass, PACKAGE_CONSTANT, null)
+
+    assertEquals("Package constant", readerClass.invokeStatic(READ_PACKAGE_CONSTANT_METHOD.name))
+    assertEquals("Package constant", readerClass.invokeStatic(READ_PACKAGE_CONSTANT_METHOD.name))
+    assertEquals("Public constant", readerClass.invokeStatic(READ_PUBLIC_CONSTANT_METHOD.name))
+    assertEquals(3, TestDeobfuscator.decodedStringCount)
+    assertLazyConstant(constantsClass, PACKAGE_CONSTANT, "Package constant")
+    assertLazyConstant(constantsClass, PRIVATE_CONSTANT, null)
+  }
+
+  private fun assertEagerConstant(constantsClass: Class<*>, fieldName: String, value: String) {
+    val field = constantsClass.getDeclaredField(fieldName)
+    assertTrue(Modifier.isFinal(field.modifiers))
+    field.isAccessible = true
+    assertEquals(value, field.get(null))
+  }
+
+  private fun assertLazyConstant(constantsClass: Class<*>, fieldName: String, value: String?) {
+    val field = constantsClass.getDeclaredField(fieldName)
+    assertFalse(Modifier.isFinal(field.modifiers))
+    field.isAccessible = true
+    assertEquals(value, field.get(null))
+  }
+
+  // Javac inlines constants, so a class that reads them with getstatic is generated.
+  private fun generateConstantReader(): ByteArray {
+    val writer = ClassWriter(ClassWriter.COMPUTE_MAXS or ClassWriter.COMPUTE_FRAMES)
+    writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, READER_NAME.replace('.', '/'), null, "java/lang/Object", null)
+    generateRead(writer, READ_PACKAGE_CONSTANT_METHOD, PACKAGE_CONSTANT)
+    generateRead(writer, READ_PUBLIC_CONSTANT_METHOD, PUBLIC_CONSTANT)
+    writer.visitEnd()
+    return writer.toByteArray()
+  }
+
+  private fun generateRead(writer: ClassWriter, method: Method, fieldName: String) {
+    GeneratorAdapter(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, method, null, null, writer).apply {
+      visitCode()
+      getStatic(Type.getType(LazyConstants::class.java), fieldName, Type.getType(String::class.java))
+      returnValue()
+      endMethod()
+    }
+  }
+
+  companion object {
+    private const val SEED = 0x1a2c
+    private const val STRING_DESCRIPTOR = "Ljava/lang/String;"
+
+    private const val PRIVATE_CONSTANT = "PRIVATE_CONSTANT"
+    private const val PACKAGE_CONSTANT = "PACKAGE_CONSTANT"
+    private const val PROTECTED_CONSTANT = "PROTECTED_CONSTANT"
+    private const val PUBLIC_CONSTANT = "PUBLIC_CONSTANT"
+
+    private const val READER_NAME = "io.michaelrocks.paranoid.processor.fixtures.ConstantReader"
+    private val READ_PACKAGE_CONSTANT_METHOD = Method("readPackageConstant", "()Ljava/lang/String;")
+    private val READ_PUBLIC_CONSTANT_METHOD = Method("readPublicConstant", "()Ljava/lang/String;")
+  }
+}
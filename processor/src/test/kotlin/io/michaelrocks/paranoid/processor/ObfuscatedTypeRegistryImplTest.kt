@@ -0,0 +1,50 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.GripFactory
+import com.joom.grip.mirrors.getObjectType
+import io.michaelrocks.paranoid.processor.PatchedClassLoader.Companion.ASM_API
+import io.michaelrocks.paranoid.processor.fixtures.ObfuscationTiers
+import io.michaelrocks.paranoid.processor.model.ObfuscationTier
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.File
+
+class ObfuscatedTypeRegistryImplTest {
+  private val registry = run {
+    val classPath = File(ObfuscationTiers::class.java.protectionDomain.codeSource.location.toURI())
+    ObfuscatedTypeRegistryImpl(GripFactory.newInstance(ASM_API).create(listOf(classPath)).classRegistry)
+  }
+
+  @Test
+  fun readsTierOfAnnotatedClass() {
+    assertEquals(ObfuscationTier.STRONG, registry.getObfuscationTier(getObjectType<ObfuscationTiers.Strong>()))
+    assertEquals(ObfuscationTier.FAST, registry.getObfuscationTier(getObjectType<ObfuscationTiers.Fast>()))
+    assertEquals(ObfuscationTier.DEFAULT, registry.getObfuscationTier(getObjectType<ObfuscationTiers.Default>()))
+  }
+
+  @Test
+  fun readsTierOfClosestAnnotatedClass() {
+    val nestedType = getObjectType<ObfuscationTiers.Strong.Nested>()
+    val nestedDefaultType = getObjectType<ObfuscationTiers.Fast.NestedDefault>()
+
+    assertEquals(ObfuscationTier.STRONG, registry.getObfuscationTier(nestedType))
+    assertEquals(ObfuscationTier.DEFAULT, registry.getObfuscationTier(nestedDefaultType))
+    assertEquals(ObfuscationTier.DEFAULT, registry.getObfuscationTier(getObjectType<ObfuscationTiers>()))
+  }
+}
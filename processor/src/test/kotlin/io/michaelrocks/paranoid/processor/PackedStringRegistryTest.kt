@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import io.michaelrocks.paranoid.DeobfuscatorHelper
+import io.michaelrocks.paranoid.StringPool
+import io.michaelrocks.paranoid.processor.model.StringEncoding
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class PackedStringRegistryTest {
+  @Test
+  fun decodesPackedUtf16Strings() {
+    assertRoundTrip(StringEncoding.UTF16)
+  }
+
+  @Test
+  fun decodesPackedSevenBitStrings() {
+    assertRoundTrip(StringEncoding.SEVEN_BIT)
+  }
+
+  @Test
+  fun decodesPackedDeflatedStrings() {
+    assertRoundTrip(StringEncoding.DEFLATE)
+  }
+
+  @Test
+  fun sharesPrefixesAndSuffixes() {
+    val registry = PackedStringRegistry(SEED, listOf("Hello", "Hello, World!", "World!", "ld!"))
+    assertEquals("Hello".length + "World!".length + "ld!".length, registry.getSharedStringLength().toInt())
+  }
+
+  @Test
+  fun encodesChunksOnlyOnce() {
+    val registry = PackedStringRegistry(SEED, STRINGS, StringEncoding.DEFLATE)
+    assertSame(registry.getAllChunks(), registry.getAllChunks())
+  }
+
+  @Test(expected = IllegalStateException::class)
+  fun rejectsStringThatHasNotBeenPacked() {
+    PackedStringRegistry(SEED, STRINGS).registerString("Unknown")
+  }
+
+  private fun assertRoundTrip(encoding: StringEncoding) {
+    val registry = PackedStringRegistry(SEED, STRINGS, encoding)
+    val ids = STRINGS.map { registry.registerString(it) }
+    val chunks = registry.getAllChunks().toTypedArray<String?>()
+
+    assertTrue(registry.getSharedStringLength() > 0)
+    assertEquals(1, registry.getDuplicateStringCount())
+    val format = when (encoding) {
+      StringEncoding.UTF16 -> 0
+      StringEncoding.SEVEN_BIT -> StringPool.FORMAT_SEVEN_BIT
+      StringEncoding.DEFLATE -> StringPool.FORMAT_DEFLATE
+    }
+    val pool = StringPool.create(format or StringPool.FORMAT_PACKED, SEED, chunks, null, null, null)
+    STRINGS.forEachIndexed { index, string ->
+      assertEquals(string, pool.getString(ids[index]))
+    }
+  }
+
+  companion object {
+    private const val SEED = 0x7ac4ed
+
+    private val STRINGS = listOf(
+      "",
+      "Hello",
+      "Hello, World!",
+      "World!",
+      "Café ÿ\u0080\u007f\u0000",
+      "Привет, мир",
+      "мир",
+      "日本語 \ud83d\ude00 \uffff",
+      (0 until DeobfuscatorHelper.MAX_CHUNK_LENGTH * 2 + 17).map { 'a' + it % 26 }.joinToString(""),
+      (0 until DeobfuscatorHelper.MAX_CHUNK_LENGTH + 3).map { 'Ѐ' + it % 256 }.joinToString(""),
+      "Hello"
+    )
+  }
+}
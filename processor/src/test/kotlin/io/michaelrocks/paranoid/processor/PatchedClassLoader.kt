@@ -0,0 +1,62 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.Opcodes
+
+// Defines patched classes itself instead of delegating to the test class loader, so they're loaded and verified in
+// place of the original ones. Patched classes share a runtime package and can access package-private members of each
+// other.
+class PatchedClassLoader(
+  private val bytesByClassName: Map<String, ByteArray>
+) : ClassLoader(PatchedClassLoader::class.java.classLoader) {
+
+  override fun loadClass(name: String, resolve: Boolean): Class<*> {
+    val bytes = bytesByClassName[name] ?: return super.loadClass(name, resolve)
+    synchronized(getClassLoadingLock(name)) {
+      return findLoadedClass(name) ?: defineClass(name, bytes, 0, bytes.size)
+    }
+  }
+
+  companion object {
+    const val ASM_API = Opcodes.ASM9
+
+    fun readClass(type: Class<*>): ByteArray {
+      return type.getResourceAsStream("/${type.name.replace('.', '/')}.class")!!.use { it.readBytes() }
+    }
+
+    fun patchClass(type: Class<*>, createPatcher: (ClassVisitor) -> ClassVisitor): ByteArray {
+      return patchClass(readClass(type), createPatcher)
+    }
+
+    fun patchClass(bytes: ByteArray, createPatcher: (ClassVisitor) -> ClassVisitor): ByteArray {
+      // Frames are computed the way Patcher does it, so the patched bytecode has to pass the verifier.
+      val writer = ClassWriter(ClassWriter.COMPUTE_MAXS or ClassWriter.COMPUTE_FRAMES)
+      ClassReader(bytes).accept(createPatcher(writer), ClassReader.SKIP_FRAMES)
+      return writer.toByteArray()
+    }
+  }
+}
+
+fun Class<*>.invokeStatic(methodName: String, vararg arguments: Any?): Any? {
+  val method = declaredMethods.single { it.name == methodName }
+  method.isAccessible = true
+  return method.invoke(null, *arguments)
+}
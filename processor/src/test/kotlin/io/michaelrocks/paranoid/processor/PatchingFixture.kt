@@ -0,0 +1,44 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import io.michaelrocks.paranoid.processor.PatchedClassLoader.Companion.ASM_API
+import io.michaelrocks.paranoid.processor.PatchedClassLoader.Companion.patchClass
+import org.objectweb.asm.ClassVisitor
+
+// Patches classes the way Patcher does it with a string registry of its own, so the patched classes can be loaded
+// and run with TestDeobfuscator.
+class PatchingFixture(
+  private val seed: Int,
+  private val shouldCacheLiteral: (String) -> Boolean = { false }
+) {
+  val stringRegistry = StringRegistryImpl(seed)
+  val deobfuscator = TestDeobfuscator.createDeobfuscator()
+
+  fun createLiteralsPatcher(delegate: ClassVisitor): ClassVisitor {
+    return StringLiteralsClassPatcher(deobfuscator, stringRegistry, shouldCacheLiteral, ASM_API, delegate)
+  }
+
+  fun patchLiterals(bytes: ByteArray): ByteArray {
+    return patchClass(bytes) { createLiteralsPatcher(it) }
+  }
+
+  // TestDeobfuscator can decode only strings registered before this call, so it's made when every class is patched.
+  fun loadStrings() {
+    TestDeobfuscator.load(stringRegistry, seed)
+  }
+}
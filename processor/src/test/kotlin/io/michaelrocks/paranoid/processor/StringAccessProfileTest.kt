@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import io.michaelrocks.paranoid.StringAccessRecorder
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.File
+
+class StringAccessProfileTest {
+  @Test
+  fun readsProfileDumpedByRecorder() {
+    // Recorders are registered globally and dumped together, so the strings don't occur in other tests.
+    val firstString = "First recorded string"
+    val secondString = "Second recorded string"
+    val unusedString = "Unused recorded string"
+    val table = encodeLongTable(
+      listOf(
+        FIRST_ID, getStringKey(firstString),
+        SECOND_ID, getStringKey(secondString),
+        UNUSED_ID, getStringKey(unusedString)
+      )
+    )
+    val recorder = StringAccessRecorder("StringAccessProfileTest", table.toTypedArray(), 3)
+    recorder.record(SECOND_ID)
+    recorder.record(FIRST_ID)
+    recorder.record(UNKNOWN_ID)
+    recorder.record(SECOND_ID)
+    recorder.record(SECOND_ID)
+
+    val profile = withTempFile { file ->
+      StringAccessRecorder.dump(file)
+      StringAccessProfile.read(file)
+    }
+
+    val firstEntry = profile.findEntry(firstString)!!
+    val secondEntry = profile.findEntry(secondString)!!
+    assertNull(profile.findEntry(unusedString))
+    assertEquals(getStringKey(firstString), firstEntry.key)
+    assertEquals(1L, firstEntry.hits)
+    assertEquals(3L, secondEntry.hits)
+    assertTrue(secondEntry.order < firstEntry.order)
+    assertTrue(secondEntry.firstAccessNanos in 1..firstEntry.firstAccessNanos)
+    // Entries are sorted by the order of the first access.
+    val entries = profile.entries.toList()
+    assertTrue(entries.indexOf(secondEntry) < entries.indexOf(firstEntry))
+  }
+
+  @Test
+  fun rejectsFileWithoutHeader() {
+    withTempFile { file ->
+      file.writeText("0123456789abcdef 1 1 1\n")
+      assertThrows(ParanoidException::class.java) { StringAccessProfile.read(file) }
+    }
+  }
+
+  @Test
+  fun rejectsMalformedLine() {
+    withTempFile { file ->
+      file.writeText(
+        "${StringAccessRecorder.PROFILE_HEADER}\n# Comment\n\n0123456789abcdef 1 1 1\nfedcba9876543210 1 x 2\n"
+      )
+      val exception = assertThrows(ParanoidException::class.java) { StringAccessProfile.read(file) }
+      assertTrue(exception.message!!.contains("line 5"))
+    }
+  }
+
+  @Test
+  fun mergesEntriesOfSameString() {
+    val profile = withTempFile { file ->
+      file.writeText(
+        """
+          |${StringAccessRecorder.PROFILE_HEADER}
+          |# First deobfuscator, unknown hits: 0
+          |00000000000000aa 5 2 200
+          |00000000000000bb 1 3 300
+          |# Second deobfuscator, unknown hits: 0
+          |00000000000000bb 2 1 100
+          |00000000000000aa 4 4 400
+          |
+        """.trimMargin()
+      )
+      StringAccessProfile.read(file)
+    }
+
+    assertEquals(
+      listOf(StringAccessProfile.Entry(0xbb, 3, 1, 100), StringAccessProfile.Entry(0xaa, 9, 2, 200)),
+      profile.entries.toList()
+    )
+  }
+
+  private inline fun <T> withTempFile(action: (File) -> T): T {
+    val file = File.createTempFile("string-access-profile", ".txt")
+    try {
+      return action(file)
+    } finally {
+      file.delete()
+    }
+  }
+
+  companion object {
+    private const val FIRST_ID = 0x1234_5678_9abc_def0L
+    private const val SECOND_ID = 0x0fed_cba9_8765_4321L
+    private const val UNUSED_ID = 42L
+    private const val UNKNOWN_ID = 43L
+  }
+}
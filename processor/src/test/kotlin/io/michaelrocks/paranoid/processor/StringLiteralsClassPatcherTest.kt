@@ -0,0 +1,470 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import io.michaelrocks.paranoid.DeobfuscatorHelper
+import io.michaelrocks.paranoid.processor.PatchedClassLoader.Companion.ASM_API
+import io.michaelrocks.paranoid.processor.PatchedClassLoader.Companion.patchClass
+import io.michaelrocks.paranoid.processor.PatchedClassLoader.Companion.readClass
+import io.michaelrocks.paranoid.processor.fixtures.CachedLiterals
+import io.michaelrocks.paranoid.processor.fixtures.KotlinStringComparisons
+import io.michaelrocks.paranoid.processor.fixtures.KotlinStringSwitches
+import io.michaelrocks.paranoid.processor.fixtures.LongLiterals
+import io.michaelrocks.paranoid.processor.fixtures.StringAppends
+import io.michaelrocks.paranoid.processor.fixtures.StringComparisons
+import io.michaelrocks.paranoid.processor.fixtures.StringLengths
+import io.michaelrocks.paranoid.processor.fixtures.StringReaders
+import io.michaelrocks.paranoid.processor.fixtures.StringSwitches
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.objectweb.asm.ClassReader
+import org.objectweb.asm.ClassVisitor
+import org.objectweb.asm.ClassWriter
+import org.objectweb.asm.MethodVisitor
+import org.objectweb.asm.Opcodes
+import org.objectweb.asm.Type
+import org.objectweb.asm.commons.GeneratorAdapter
+import org.objectweb.asm.commons.Method
+import java.io.Reader
+import java.io.StringReader
+import java.lang.reflect.InvocationTargetException
+
+// Patched classes are loaded and run, so every rewritten instruction sequence has to pass the verifier and behave like
+// the original one.
+class StringLiteralsClassPatcherTest {
+  private var patchedBytes = ByteArray(0)
+
+  @Test
+  fun comparesLiteralsInPlace() {
+    val literal = "Compared literal"
+    val values = listOf(literal, "Other", null, StringBuilder(literal), StringComparisons.AlwaysEqual())
+    val patchedClass = patchAndLoad(StringComparisons::class.java, literal)
+
+    assertSameResults(StringComparisons::class.java, patchedClass, "literalEqualsValue", values, decodedStringCount = 0)
+    assertSameResults(
+      StringComparisons::class.java,
+      patchedClass,
+      "valueEqualsLiteral",
+      listOf(literal, "Other", null),
+      decodedStringCount = 0
+    )
+    assertSameResults(
+      StringComparisons::class.java,
+      patchedClass,
+      "objectsEqualsLiteralFirst",
+      values,
+      decodedStringCount = 0
+    )
+  }
+
+  @Test
+  fun comparesLiteralsWithValuesThatAreNotLocals() {
+    val literal = "Compared literal"
+    val values = listOf(literal, "Other", null, StringBuilder(literal), StringComparisons.AlwaysEqual())
+    val patchedClass = patchAndLoad(StringComparisons::class.java, literal)
+
+    // A null receiver that isn't a local has to throw the same way as a null local does.
+    val strings = listOf(literal, "Other", null)
+    assertSameResults(
+      StringComparisons::class.java,
+      patchedClass,
+      "fieldEqualsLiteral",
+      strings,
+      decodedStringCount = 0
+    )
+    assertSameResults(
+      StringComparisons::class.java,
+      patchedClass,
+      "returnedValueEqualsLiteral",
+      strings,
+      decodedStringCount = 0
+    )
+    // Only a local can be loaded again after the literal, so a literal compared with a returned value is decoded.
+    assertSameResults(
+      StringComparisons::class.java,
+      patchedClass,
+      "objectsEqualsReturnedValueSecond",
+      values,
+      decodedStringCount = 1
+    )
+    assertSameResults(
+      StringComparisons::class.java,
+      patchedClass,
+      "objectsEqualsReturnedValueFirst",
+      values,
+      decodedStringCount = 1
+    )
+  }
+
+  @Test
+  fun decodesLiteralComparedByEqualsOfAnotherObject() {
+    val literal = "Compared literal"
+    val values = listOf(literal, "Other", null, StringBuilder(literal), StringComparisons.AlwaysEqual())
+    val patchedClass = patchAndLoad(StringComparisons::class.java, literal)
+
+    assertSameResults(
+      StringComparisons::class.java,
+      patchedClass,
+      "objectsEqualsLiteralSecond",
+      values,
+      decodedStringCount = 1
+    )
+  }
+
+  @Test
+  fun comparesKotlinLiteralsInPlaceOnlyWhenLiteralComesFirst() {
+    val literal = "Kotlin literal"
+    val values = listOf(literal, "Other", null, StringBuilder(literal), StringComparisons.AlwaysEqual())
+    val patchedClass = patchAndLoad(KotlinStringComparisons::class.java, literal)
+
+    assertSameResults(
+      KotlinStringComparisons::class.java,
+      patchedClass,
+      "literalEqualsValue",
+      values,
+      decodedStringCount = 0
+    )
+    assertSameResults(
+      KotlinStringComparisons::class.java,
+      patchedClass,
+      "valueEqualsLiteral",
+      values,
+      decodedStringCount = 1
+    )
+    assertSameResults(
+      KotlinStringComparisons::class.java,
+      patchedClass,
+      "literalEqualsReturnedValue",
+      values,
+      decodedStringCount = 1
+    )
+    assertSameResults(
+      KotlinStringComparisons::class.java,
+      patchedClass,
+      "returnedValueEqualsLiteral",
+      values,
+      decodedStringCount = 1
+    )
+  }
+
+  @Test
+  fun dropsNullCheckOnlyAtCasesReachedBySwitch() {
+    val literals = arrayOf("First case", "Second case")
+    val values = listOf("First case", "Second case", "Aa", "BB", "Other", null)
+    val patchedClass = patchAndLoad(StringSwitches::class.java, *literals)
+
+    assertSameResults(StringSwitches::class.java, patchedClass, "switchOnString", values, decodedStringCount = 0)
+    // The second string of a case with colliding hash codes is compared after a jump from the first comparison.
+    assertEquals(1, countNullChecks(patchedBytes, "switchOnString"))
+  }
+
+  @Test
+  fun comparesKotlinWhenBranchesInPlace() {
+    val literals = arrayOf("First case", "Second case")
+    val values = listOf("First case", "Second case", "Aa", "BB", "Other", null)
+    val patchedClass = patchAndLoad(KotlinStringSwitches::class.java, *literals)
+
+    assertSameResults(KotlinStringSwitches::class.java, patchedClass, "whenOnString", values, decodedStringCount = 0)
+    assertEquals(1, countNullChecks(patchedBytes, "whenOnString"))
+  }
+
+  @Test
+  fun keepsNullCheckAtCaseReachedByAnotherJump() {
+    val originalBytes = generateSharedCaseSwitch()
+    val originalClass = PatchedClassLoader(mapOf(SHARED_CASE_SWITCH_NAME to originalBytes))
+      .loadClass(SHARED_CASE_SWITCH_NAME)
+    val patchedClass = patchAndLoad(SHARED_CASE_SWITCH_NAME, originalBytes, "Shared case")
+
+    assertEquals(1, countNullChecks(patchedBytes, SHARED_CASE_METHOD.name))
+    listOf(true, false).forEach { reassign ->
+      listOf("Shared case", "Other").forEach { value ->
+        val expectedResult = originalClass.invokeAndCatch(SHARED_CASE_METHOD.name, value, reassign)
+        assertEquals(expectedResult, patchedClass.invokeAndCatch(SHARED_CASE_METHOD.name, value, reassign))
+      }
+    }
+  }
+
+  @Test
+  fun appendsLiteralsInPlace() {
+    val literals = arrayOf("Appended literal", "Concatenated literal")
+    val patchedClass = patchAndLoad(StringAppends::class.java, *literals)
+    val values = listOf("Value", "", "Значение", null)
+
+    assertSameResults(StringAppends::class.java, patchedClass, "appendToNewBuilder", values, decodedStringCount = 0)
+    assertSameResults(StringAppends::class.java, patchedClass, "concatenate", values, decodedStringCount = 0)
+    // A new builder is passed to every call, so the original and the patched methods don't append to the same one.
+    assertEquals("Prefix: Appended literal", patchedClass.invokeStatic("appendToBuilder", StringBuilder("Prefix: ")))
+    assertEquals(0, TestDeobfuscator.decodedStringCount)
+    assertSameResults(StringAppends::class.java, patchedClass, "appendToBuilder", listOf(null), decodedStringCount = 0)
+  }
+
+  @Test
+  fun readsLiteralsInPlaceOnlyWhenReaderIsUsedAsReader() {
+    val literals = arrayOf("Returned reader", "Returned string reader", "Passed reader", "Local reader")
+    val patchedClass = patchAndLoad(StringReaders::class.java, *literals)
+
+    val reader = patchedClass.invokeStatic("createReader") as Reader
+    assertFalse(reader is StringReader)
+    assertEquals("Returned reader", StringReaders.readAll(reader))
+    assertEquals("Passed reader", patchedClass.invokeStatic("readPassedReader"))
+    assertEquals(0, TestDeobfuscator.decodedStringCount)
+
+    // A reader that may be used as a StringReader has to stay one.
+    val stringReader = patchedClass.invokeStatic("createStringReader") as StringReader
+    assertEquals("Returned string reader", StringReaders.readAll(stringReader))
+    assertEquals("Local reader", patchedClass.invokeStatic("readLocalReader"))
+    assertEquals(2, TestDeobfuscator.decodedStringCount)
+  }
+
+  @Test
+  fun measuresLiteralsInPlace() {
+    val patchedClass = patchAndLoad(StringLengths::class.java, "Measured literal")
+    val values = listOf("Short", "Measured literal", "Longer than measured literal", null)
+
+    assertEquals("Measured literal".length, patchedClass.invokeStatic("measureLiteral"))
+    assertEquals(0, TestDeobfuscator.decodedStringCount)
+    assertSameResults(StringLengths::class.java, patchedClass, "isLongerThanLiteral", values, decodedStringCount = 0)
+  }
+
+  @Test
+  fun cachesLiteralsInStaticFields() {
+    val fixture = PatchingFixture(SEED) { it != "Uncached literal" }
+    val literalsType = CachedLiterals.Literals::class.java
+    val bytesByClassName = mapOf(
+      CachedLiterals::class.java.name to fixture.patchLiterals(readClass(CachedLiterals::class.java)),
+      literalsType.name to fixture.patchLiterals(readClass(literalsType))
+    )
+    fixture.loadStrings()
+    val loader = PatchedClassLoader(bytesByClassName)
+    val patchedClass = Class.forName(CachedLiterals::class.java.name, true, loader)
+    val patchedLiteralsClass = loader.loadClass(literalsType.name)
+
+    // A static initializer runs only once, so its literals aren't cached.
+    assertEquals(1, TestDeobfuscator.decodedStringCount)
+    assertEquals("Initialized literal", patchedClass.invokeStatic("getInitializedLiteral"))
+    val literal = patchedClass.invokeStatic("getLiteral")
+    assertEquals("Cached literal", literal)
+    assertSame(literal, patchedClass.invokeStatic("getLiteral"))
+    assertSame(literal, patchedClass.invokeStatic("getSameLiteral"))
+    assertEquals(2, TestDeobfuscator.decodedStringCount)
+
+    assertEquals("Uncached literal", patchedClass.invokeStatic("getUncachedLiteral"))
+    assertEquals("Uncached literal", patchedClass.invokeStatic("getUncachedLiteral"))
+    assertEquals("Interface literal", patchedLiteralsClass.invokeStatic("getInterfaceLiteral"))
+    assertEquals("Interface literal", patchedLiteralsClass.invokeStatic("getInterfaceLiteral"))
+    assertEquals(6, TestDeobfuscator.decodedStringCount)
+
+    // Both methods that return the same literal share a field, and interfaces cannot have mutable fields at all.
+    assertEquals(listOf("paranoid\$literal\$0"), patchedClass.getSyntheticFieldNames())
+    assertEquals(emptyList<String>(), patchedLiteralsClass.getSyntheticFieldNames())
+  }
+
+  @Test
+  fun usesLiteralsLongerThanChunkInPlace() {
+    val className = LongLiterals::class.java.name
+    val originalBytes = expandLongLiterals(readClass(LongLiterals::class.java))
+    val originalClass = PatchedClassLoader(mapOf(className to originalBytes)).loadClass(className)
+    val patchedClass = patchAndLoad(className, originalBytes, LONG_LITERAL, LONG_COLD_LITERAL)
+
+    val reader = patchedClass.invokeStatic("createReader") as Reader
+    assertFalse(reader is StringReader)
+    assertEquals(LONG_LITERAL, StringReaders.readAll(reader))
+    assertEquals(LONG_LITERAL.length, patchedClass.invokeStatic("measureLiteral"))
+    assertEquals("Prefix: $LONG_LITERAL", patchedClass.invokeStatic("appendToBuilder", StringBuilder("Prefix: ")))
+    assertEquals(0, TestDeobfuscator.decodedStringCount)
+
+    // Values that differ only in the last char are compared across the end of the first chunk.
+    val changedLiteral = "${LONG_LITERAL.dropLast(1)}!"
+    val values = listOf(LONG_LITERAL, changedLiteral, LONG_COLD_LITERAL, null, StringBuilder(LONG_LITERAL))
+    assertSameResults(originalClass, patchedClass, "literalEqualsValue", values, decodedStringCount = 0)
+  }
+
+  @Test
+  fun cachesHotLiteralsLongerThanChunk() {
+    // Literals are cached the way ParanoidProcessor caches hot strings of an access profile.
+    val profile = StringAccessProfile(listOf(StringAccessProfile.Entry(getStringKey(LONG_LITERAL), 100, 1, 0)))
+    val fixture = PatchingFixture(SEED) { (profile.findEntry(it)?.hits ?: 0) >= HOT_STRING_THRESHOLD }
+    val className = LongLiterals::class.java.name
+    val bytes = patchClass(expandLongLiterals(readClass(LongLiterals::class.java))) {
+      fixture.createLiteralsPatcher(it)
+    }
+    fixture.loadStrings()
+    val patchedClass = PatchedClassLoader(mapOf(className to bytes)).loadClass(className)
+
+    val literal = patchedClass.invokeStatic("getLiteral")
+    assertEquals(LONG_LITERAL, literal)
+    assertSame(literal, patchedClass.invokeStatic("getLiteral"))
+    assertEquals(LONG_COLD_LITERAL, patchedClass.invokeStatic("getColdLiteral"))
+    assertEquals(LONG_COLD_LITERAL, patchedClass.invokeStatic("getColdLiteral"))
+    assertEquals(3, TestDeobfuscator.decodedStringCount)
+    assertEquals(listOf("paranoid\$literal\$0"), patchedClass.getSyntheticFieldNames())
+  }
+
+  private fun patchAndLoad(type: Class<*>, vararg literals: String): Class<*> {
+    return patchAndLoad(type.name, readClass(type), *literals)
+  }
+
+  private fun patchAndLoad(className: String, bytes: ByteArray, vararg literals: String): Class<*> {
+    val fixture = PatchingFixture(SEED)
+    patchedBytes = fixture.patchLiterals(bytes)
+    fixture.loadStrings()
+
+    val constants = String(patchedBytes, Charsets.ISO_8859_1)
+    literals.forEach { assertFalse("Literal \"$it\" hasn't been obfuscated", it in constants) }
+    return PatchedClassLoader(mapOf(className to patchedBytes)).loadClass(className)
+  }
+
+  // A comparison with a literal that comes second calls getClass() on the other operand to throw if it's null.
+  private fun countNullChecks(bytes: ByteArray, methodName: String): Int {
+    var count = 0
+    ClassReader(bytes).accept(
+      object : ClassVisitor(ASM_API) {
+        override fun visitMethod(
+          access: Int,
+          name: String,
+          desc: String,
+          signature: String?,
+          exceptions: Array<out String>?
+        ): MethodVisitor? {
+          if (name != methodName) {
+            return null
+          }
+
+          return object : MethodVisitor(ASM_API) {
+            override fun visitMethodInsn(opcode: Int, owner: String, name: String, desc: String, isInterface: Boolean) {
+              if (owner == "java/lang/Object" && name == "getClass") {
+                count += 1
+              }
+            }
+          }
+        }
+      },
+      0
+    )
+    return count
+  }
+
+  // Generates a string switch whose case can also be reached from the default branch after the selector is set to
+  // null. Compilers don't generate such code, but the patcher has to keep the null check there anyway.
+  private fun generateSharedCaseSwitch(): ByteArray {
+    val writer = ClassWriter(ClassWriter.COMPUTE_MAXS or ClassWriter.COMPUTE_FRAMES)
+    writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, SHARED_CASE_SWITCH_NAME.replace('.', '/'), null, OBJECT, null)
+    GeneratorAdapter(Opcodes.ACC_PUBLIC or Opcodes.ACC_STATIC, SHARED_CASE_METHOD, null, null, writer).apply {
+      val caseLabel = newLabel()
+      val defaultLabel = newLabel()
+      val endLabel = newLabel()
+      visitCode()
+      loadArg(0)
+      invokeVirtual(STRING_TYPE, Method("hashCode", "()I"))
+      visitLookupSwitchInsn(defaultLabel, intArrayOf("Shared case".hashCode()), arrayOf(caseLabel))
+      mark(defaultLabel)
+      loadArg(1)
+      ifZCmp(GeneratorAdapter.EQ, endLabel)
+      push(null as String?)
+      storeArg(0)
+      goTo(caseLabel)
+      mark(caseLabel)
+      loadArg(0)
+      push("Shared case")
+      invokeVirtual(STRING_TYPE, Method("equals", "(Ljava/lang/Object;)Z"))
+      returnValue()
+      mark(endLabel)
+      push(false)
+      returnValue()
+      endMethod()
+    }
+    writer.visitEnd()
+    return writer.toByteArray()
+  }
+
+  private fun expandLongLiterals(bytes: ByteArray): ByteArray {
+    return patchClass(bytes) { delegate ->
+      object : ClassVisitor(ASM_API, delegate) {
+        override fun visitMethod(
+          access: Int,
+          name: String,
+          desc: String,
+          signature: String?,
+          exceptions: Array<out String>?
+        ): MethodVisitor {
+          return object : MethodVisitor(ASM_API, super.visitMethod(access, name, desc, signature, exceptions)) {
+            override fun visitLdcInsn(value: Any?) {
+              super.visitLdcInsn(LONG_LITERALS_BY_PLACEHOLDER[value] ?: value)
+            }
+          }
+        }
+      }
+    }
+  }
+
+  // Every value is passed to the original method and to the patched one, and each call decodes the given number of
+  // strings as a whole.
+  private fun assertSameResults(
+    originalClass: Class<*>,
+    patchedClass: Class<*>,
+    methodName: String,
+    values: List<Any?>,
+    decodedStringCount: Int
+  ) {
+    values.forEach { value ->
+      val expectedResult = originalClass.invokeAndCatch(methodName, value)
+      TestDeobfuscator.decodedStringCount = 0
+      val result = patchedClass.invokeAndCatch(methodName, value)
+      assertEquals("$methodName($value)", expectedResult, result)
+      if (expectedResult !is Class<*>) {
+        assertEquals("Strings decoded by $methodName($value)", decodedStringCount, TestDeobfuscator.decodedStringCount)
+      }
+    }
+  }
+
+  private fun Class<*>.getSyntheticFieldNames(): List<String> {
+    return declaredFields.filter { it.isSynthetic }.map { it.name }
+  }
+
+  // Returns the class of an exception thrown by the method, so a patched method is expected to throw the same one.
+  private fun Class<*>.invokeAndCatch(methodName: String, vararg arguments: Any?): Any? {
+    return try {
+      invokeStatic(methodName, *arguments)
+    } catch (exception: InvocationTargetException) {
+      exception.targetException.javaClass
+    }
+  }
+
+  companion object {
+    private const val SEED = 0x2b7e
+    private const val OBJECT = "java/lang/Object"
+    private val STRING_TYPE = Type.getType(String::class.java)
+
+    private const val SHARED_CASE_SWITCH_NAME = "io.michaelrocks.paranoid.processor.fixtures.SharedCaseSwitch"
+    private val SHARED_CASE_METHOD = Method("compareAtSharedCase", "(Ljava/lang/String;Z)Z")
+
+    private const val HOT_STRING_THRESHOLD = 10L
+    private val LONG_LITERAL = createLongLiteral(DeobfuscatorHelper.MAX_CHUNK_LENGTH + 5, 'a')
+    private val LONG_COLD_LITERAL = createLongLiteral(DeobfuscatorHelper.MAX_CHUNK_LENGTH * 2, 'A')
+    private val LONG_LITERALS_BY_PLACEHOLDER = mapOf(
+      "Long literal" to LONG_LITERAL,
+      "Long cold literal" to LONG_COLD_LITERAL
+    )
+
+    private fun createLongLiteral(length: Int, firstChar: Char): String {
+      return (0 until length).map { firstChar + it % 26 }.joinToString("")
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import io.michaelrocks.paranoid.DeobfuscatorHelper
+import io.michaelrocks.paranoid.FastStringDecoder
+import io.michaelrocks.paranoid.StringPool
+import io.michaelrocks.paranoid.processor.model.CipherMode
+import io.michaelrocks.paranoid.processor.model.StringEncoding
+import io.michaelrocks.paranoid.processor.model.StringIdFormat
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertThrows
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.io.IOException
+import java.io.Reader
+import java.io.StringReader
+
+// Checks operations that use strings straight from a pool with every pool format and id format.
+class StringPoolTest {
+  @Test
+  fun comparesStringsWithoutDecodingThem() {
+    forEachPool { pool ->
+      STRINGS.forEach { string ->
+        assertTrue(pool.equals(string, string))
+        assertTrue(pool.equals(string, StringBuilder(string)))
+        assertFalse(pool.equals(string, null))
+        assertFalse(pool.equals(string, string + "!"))
+        if (string.isNotEmpty()) {
+          assertFalse(pool.equals(string, string.dropLast(1)))
+          assertFalse(pool.equals(string, string.dropLast(1) + (string.last() + 1)))
+        }
+      }
+    }
+  }
+
+  @Test
+  fun appendsStringsWithoutDecodingThem() {
+    forEachPool { pool ->
+      STRINGS.forEach { string ->
+        val builder = StringBuilder("Prefix")
+        assertSame(builder, pool.appendTo(string, builder))
+        assertEquals("Prefix$string", builder.toString())
+      }
+    }
+  }
+
+  @Test
+  fun readsStringsWithoutDecodingThem() {
+    forEachPool { pool ->
+      STRINGS.forEach { string ->
+        val reader = pool.getReader(string)
+        val expectedReader = StringReader(string)
+        assertEquals(expectedReader.read(), reader.read())
+        assertRead(expectedReader, reader, 0, 5)
+        assertRead(expectedReader, reader, 3, 0)
+        assertRead(expectedReader, reader, 2, string.length)
+        assertRead(expectedReader, reader, 0, 1)
+        assertEquals(-1, reader.read())
+        assertTrue(reader.ready())
+      }
+    }
+  }
+
+  @Test
+  fun skipsCharsLikeStringReader() {
+    forEachPool { pool ->
+      STRINGS.forEach { string ->
+        val reader = pool.getReader(string)
+        val expectedReader = StringReader(string)
+        // Skipping backwards makes a reader open the string again and skip to the position.
+        assertEquals(expectedReader.skip(7), reader.skip(7))
+        assertEquals(expectedReader.skip(-3), reader.skip(-3))
+        assertEquals(expectedReader.read(), reader.read())
+        assertEquals(expectedReader.skip(-100), reader.skip(-100))
+        assertEquals(expectedReader.read(), reader.read())
+        assertEquals(expectedReader.skip(100), reader.skip(100))
+        assertEquals(expectedReader.read(), reader.read())
+        assertEquals(expectedReader.skip(string.length.toLong()), reader.skip(string.length.toLong()))
+        assertEquals(-1, reader.read())
+      }
+    }
+  }
+
+  @Test
+  fun resetsReadersToMark() {
+    forEachPool { pool ->
+      STRINGS.filter { it.length > 8 }.forEach { string ->
+        val reader = pool.getReader(string)
+        assertTrue(reader.markSupported())
+        reader.reset()
+        assertEquals(string[0].code, reader.read())
+        reader.skip(5)
+        reader.mark(0)
+        assertEquals(string[6].code, reader.read())
+        assertEquals(string[7].code, reader.read())
+        reader.reset()
+        assertEquals(string[6].code, reader.read())
+        assertThrows(IllegalArgumentException::class.java) { reader.mark(-1) }
+        assertThrows(IndexOutOfBoundsException::class.java) { reader.read(CharArray(4), 2, 3) }
+        reader.close()
+        reader.close()
+        assertThrows(IOException::class.java) { reader.read() }
+      }
+    }
+  }
+
+  @Test
+  fun measuresStringsWithoutDecodingThem() {
+    forEachPool { pool ->
+      STRINGS.forEach { string ->
+        assertEquals(string.length, pool.length(string))
+      }
+    }
+  }
+
+  @Test
+  fun decodesStringsIntoProvidedArray() {
+    forEachPool { pool ->
+      STRINGS.forEach { string ->
+        val dest = CharArray(string.length + 3) { '#' }
+        assertEquals(string.length, pool.getChars(string, dest, 2))
+        assertEquals("##$string#", String(dest))
+
+        // Nothing is written when the string doesn't fit.
+        val shortDest = CharArray(string.length + 1) { '#' }
+        assertThrows(IndexOutOfBoundsException::class.java) { pool.getChars(string, shortDest, 2) }
+        assertThrows(IndexOutOfBoundsException::class.java) { pool.getChars(string, shortDest, -1) }
+        assertEquals("#".repeat(shortDest.size), String(shortDest))
+      }
+    }
+  }
+
+  @Test
+  fun decodesLatin1Strings() {
+    // Latin-1 chars have no fast path of their own, and the 7-bit encoding escapes half of them.
+    forEachPool(LATIN1_STRINGS) { pool ->
+      LATIN1_STRINGS.forEach { string ->
+        assertEquals(string, pool.getString(string))
+        assertEquals(string.length, pool.length(string))
+        assertTrue(pool.equals(string, StringBuilder(string)))
+        val dest = CharArray(string.length)
+        assertEquals(string.length, pool.getChars(string, dest, 0))
+        assertEquals(string, String(dest))
+      }
+    }
+  }
+
+  private fun assertRead(expectedReader: Reader, reader: Reader, offset: Int, count: Int) {
+    val expectedBuffer = CharArray(offset + count)
+    val buffer = CharArray(offset + count)
+    assertEquals(expectedReader.read(expectedBuffer, offset, count), reader.read(buffer, offset, count))
+    assertArrayEquals(expectedBuffer, buffer)
+  }
+
+  private fun forEachPool(strings: List<String> = STRINGS, action: (Pool) -> Unit) {
+    for (idFormat in StringIdFormat.values()) {
+      action(createPool(StringRegistryImpl(SEED, idFormat = idFormat), strings, 0, idFormat))
+      val counterRegistry = StringRegistryImpl(SEED, idFormat = idFormat, cipherMode = CipherMode.COUNTER)
+      action(createPool(counterRegistry, strings, StringPool.FORMAT_COUNTER, idFormat))
+      val sevenBitRegistry = StringRegistryImpl(SEED, StringEncoding.SEVEN_BIT, idFormat = idFormat)
+      action(createPool(sevenBitRegistry, strings, StringPool.FORMAT_SEVEN_BIT, idFormat))
+      val deflatedRegistry = StringRegistryImpl(SEED, StringEncoding.DEFLATE, idFormat = idFormat)
+      action(createPool(deflatedRegistry, strings, StringPool.FORMAT_DEFLATE, idFormat))
+    }
+
+    action(createPool(PackedStringRegistry(SEED, strings), strings, StringPool.FORMAT_PACKED))
+    val packedSevenBitRegistry = PackedStringRegistry(SEED, strings, StringEncoding.SEVEN_BIT)
+    action(createPool(packedSevenBitRegistry, strings, StringPool.FORMAT_PACKED or StringPool.FORMAT_SEVEN_BIT))
+    val packedDeflatedRegistry = PackedStringRegistry(SEED, strings, StringEncoding.DEFLATE)
+    action(createPool(packedDeflatedRegistry, strings, StringPool.FORMAT_PACKED or StringPool.FORMAT_DEFLATE))
+
+    // Strings of a codec are decoded as a whole and then compared, appended or copied.
+    val decodedRegistry = FastStringRegistry(SEED)
+    val idsByString = strings.associateWith { decodedRegistry.registerString(it) }
+    val chunks = decodedRegistry.getAllChunks().toTypedArray()
+    action(Pool(StringPool.create(FastStringDecoder(), chunks, null, null), idsByString))
+  }
+
+  private fun createPool(
+    registry: StringRegistry,
+    strings: List<String>,
+    format: Int,
+    idFormat: StringIdFormat = StringIdFormat.MASKED
+  ): Pool {
+    val idsByString = strings.associateWith { registry.registerString(it) }
+    val chunks = registry.getAllChunks().toTypedArray()
+    val offsets = registry.getOffsetChunks().toTypedArray().takeIf { idFormat == StringIdFormat.INDEXED }
+    return Pool(StringPool.create(format, SEED, chunks, null, offsets, null), idsByString)
+  }
+
+  private class Pool(private val pool: StringPool, private val idsByString: Map<String, Long>) {
+    fun getString(string: String): String {
+      return pool.getString(idsByString.getValue(string))
+    }
+
+    fun equals(string: String, other: CharSequence?): Boolean {
+      return pool.equals(idsByString.getValue(string), other)
+    }
+
+    fun appendTo(string: String, builder: StringBuilder): StringBuilder {
+      return pool.appendTo(idsByString.getValue(string), builder)
+    }
+
+    fun getReader(string: String): Reader {
+      return pool.getReader(idsByString.getValue(string))
+    }
+
+    fun length(string: String): Int {
+      return pool.length(idsByString.getValue(string))
+    }
+
+    fun getChars(string: String, dest: CharArray, offset: Int): Int {
+      return pool.getChars(idsByString.getValue(string), dest, offset)
+    }
+  }
+
+  companion object {
+    private const val SEED = 0x3e1f
+
+    private val STRINGS = listOf(
+      "",
+      "a",
+      "Hello, World!",
+      "Café",
+      "Привет, мир",
+      (0 until DeobfuscatorHelper.MAX_CHUNK_LENGTH + 5).map { 'a' + it % 26 }.joinToString(""),
+      (0 until DeobfuscatorHelper.MAX_CHUNK_LENGTH + 3).map { 'Ѐ' + it % 256 }.joinToString("")
+    )
+
+    private val LATIN1_STRINGS = listOf(
+      (0 until 0x100).map { it.toChar() }.joinToString(""),
+      "Café ÿ",
+      (0 until DeobfuscatorHelper.MAX_CHUNK_LENGTH + 7).map { (0x80 + it % 0x80).toChar() }.joinToString("")
+    )
+  }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import io.michaelrocks.paranoid.ArrayStringCache
+import io.michaelrocks.paranoid.DeobfuscatorHelper
+import io.michaelrocks.paranoid.LruStringCache
+import io.michaelrocks.paranoid.StringPool
+import io.michaelrocks.paranoid.processor.model.CipherMode
+import io.michaelrocks.paranoid.processor.model.StringEncoding
+import io.michaelrocks.paranoid.processor.model.StringIdFormat
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class StringRegistryTest {
+  @Test
+  fun decodesUtf16Strings() {
+    assertRoundTrip(StringEncoding.UTF16)
+  }
+
+  @Test
+  fun decodesUtf16StringsWithCounterCipher() {
+    assertRoundTrip(StringEncoding.UTF16, cipherMode = CipherMode.COUNTER)
+  }
+
+  @Test
+  fun decodesIndexedUtf16Strings() {
+    assertRoundTrip(StringEncoding.UTF16, idFormat = StringIdFormat.INDEXED)
+  }
+
+  @Test
+  fun decodesIndexedUtf16StringsWithCounterCipher() {
+    assertRoundTrip(StringEncoding.UTF16, idFormat = StringIdFormat.INDEXED, cipherMode = CipherMode.COUNTER)
+  }
+
+  @Test
+  fun decodesSevenBitStrings() {
+    assertRoundTrip(StringEncoding.SEVEN_BIT)
+  }
+
+  @Test
+  fun decodesIndexedSevenBitStrings() {
+    assertRoundTrip(StringEncoding.SEVEN_BIT, idFormat = StringIdFormat.INDEXED)
+  }
+
+  @Test
+  fun decodesDeflatedStrings() {
+    assertRoundTrip(StringEncoding.DEFLATE)
+  }
+
+  @Test
+  fun decodesIndexedDeflatedStrings() {
+    assertRoundTrip(StringEncoding.DEFLATE, idFormat = StringIdFormat.INDEXED)
+  }
+
+  @Test
+  fun deflatesPoolAgainOnlyWhenNewStringIsStored() {
+    val registry = StringRegistryImpl(SEED, StringEncoding.DEFLATE)
+    registry.registerString("First")
+    val chunks = registry.getAllChunks()
+    registry.registerString("First")
+    assertSame(chunks, registry.getAllChunks())
+
+    val id = registry.registerString("Second")
+    val newChunks = registry.getAllChunks()
+    assertNotSame(chunks, newChunks)
+    assertSame(newChunks, registry.getAllChunks())
+    val pool = StringPool.create(StringPool.FORMAT_DEFLATE, SEED, newChunks.toTypedArray(), null, null, null)
+    assertEquals("Second", pool.getString(id))
+  }
+
+  @Test
+  fun decodesUtf16StringsInBulk() {
+    assertBulkRoundTrip(StringEncoding.UTF16)
+  }
+
+  @Test
+  fun decodesUtf16StringsWithCounterCipherInBulk() {
+    assertBulkRoundTrip(StringEncoding.UTF16, CipherMode.COUNTER)
+  }
+
+  @Test
+  fun decodesSevenBitStringsInBulk() {
+    assertBulkRoundTrip(StringEncoding.SEVEN_BIT)
+  }
+
+  @Test
+  fun decodesDeflatedStringsInBulk() {
+    assertBulkRoundTrip(StringEncoding.DEFLATE)
+  }
+
+  @Test
+  fun reusesStringsStoredSequentiallyForBulkDecoding() {
+    val registry = StringRegistryImpl(SEED)
+    val strings = listOf("First", "Second", "Third")
+    val firstId = registry.registerString(strings[0])
+    strings.drop(1).forEach { registry.registerString(it) }
+    val chunkLength = registry.getAllChunks().sumOf { it.length }
+
+    assertEquals(firstId, registry.registerStrings(strings))
+    assertEquals(chunkLength, registry.getAllChunks().sumOf { it.length })
+  }
+
+  @Test
+  fun registersStringsInBulkAndOneByOne() {
+    val registry = StringRegistryImpl(SEED, laidOutStrings = listOf("Laid out"))
+    val singleId = registry.registerString("Single")
+    // Strings that are already stored or repeated are registered one by one by the caller instead.
+    assertNull(registry.registerStrings(listOf("Bulk", "Single")))
+    assertNull(registry.registerStrings(listOf("Bulk", "Laid out")))
+    assertNull(registry.registerStrings(listOf("Bulk", "Bulk")))
+    val chunkLength = registry.getAllChunks().sumOf { it.length }
+    val bulkId = checkNotNull(registry.registerStrings(listOf("First", "Second")))
+    val bulkChunkLength = registry.getAllChunks().sumOf { it.length }
+
+    assertEquals(chunkLength + "First".length + "Second".length + 2, bulkChunkLength)
+    assertEquals(bulkId, registry.registerString("First"))
+    assertEquals(singleId, registry.registerString("Single"))
+    registry.registerString("Laid out")
+    assertEquals(bulkChunkLength, registry.getAllChunks().sumOf { it.length })
+    assertEquals(4, registry.getStringCount())
+    assertEquals(setOf("Laid out", "Single", "First", "Second"), registry.getRegisteredStrings().toSet())
+    assertEquals(2, registry.getDuplicateStringCount())
+
+    val pool = StringPool.create(0, SEED, registry.getAllChunks().toTypedArray(), null, null, null)
+    assertArrayEquals(arrayOf("First", "Second"), pool.getStrings(bulkId, 2))
+    assertEquals("Single", pool.getString(singleId))
+  }
+
+  @Test
+  fun doesNotDecodeIndexedStringsInBulk() {
+    val registry = StringRegistryImpl(SEED, idFormat = StringIdFormat.INDEXED)
+    assertNull(registry.registerStrings(listOf("First", "Second")))
+  }
+
+  @Test
+  fun decodesStringsThroughCache() {
+    val registry = StringRegistryImpl(SEED)
+    val id = registry.registerString("Cached")
+    val chunks = registry.getAllChunks().toTypedArray()
+    val cache = LruStringCache(4)
+
+    val pool = StringPool.create(0, SEED, chunks, null, null, cache)
+
+    val string = pool.getString(id)
+    assertEquals("Cached", string)
+    assertSame(string, pool.getString(id))
+  }
+
+  @Test
+  fun decodesIndexedStringsThroughArrayCache() {
+    val registry = StringRegistryImpl(SEED, idFormat = StringIdFormat.INDEXED)
+    val ids = STRINGS.map { registry.registerString(it) }
+    val offsets = registry.getOffsetChunks().toTypedArray()
+    val chunks = registry.getAllChunks().toTypedArray()
+    val cache = ArrayStringCache(registry.getStringCount())
+    val pool = StringPool.create(0, SEED, chunks, null, offsets, cache)
+
+    STRINGS.forEachIndexed { index, string ->
+      val decodedString = pool.getString(ids[index])
+      assertEquals(string, decodedString)
+      assertSame(decodedString, cache.get(ids[index]))
+    }
+  }
+
+  @Test
+  fun decodesStringsLaidOutInAdvance() {
+    val registry = StringRegistryImpl(SEED, laidOutStrings = listOf("Laid out", "Never registered"))
+    val otherId = registry.registerString("Other")
+    val laidOutId = registry.registerString("Laid out")
+    val chunks = registry.getAllChunks().toTypedArray()
+
+    assertEquals("Laid out", DeobfuscatorHelper.getString(laidOutId, chunks))
+    assertEquals("Other", DeobfuscatorHelper.getString(otherId, chunks))
+    assertEquals(0, registry.getDuplicateStringCount())
+  }
+
+  @Test
+  fun storesIdenticalStringsOnce() {
+    for (encoding in StringEncoding.values()) {
+      for (idFormat in StringIdFormat.values()) {
+        val registry = StringRegistryImpl(SEED, encoding, idFormat = idFormat)
+        val id = registry.registerString("Duplicate")
+        registry.registerString("Other")
+        val chunks = registry.getAllChunks()
+        val offsetChunks = registry.getOffsetChunks()
+
+        // Strings are equal by content, so a string built at runtime is a duplicate too.
+        assertEquals(id, registry.registerString("Duplicate"))
+        assertEquals(id, registry.registerString(String("Duplicate".toCharArray())))
+        assertSame(chunks, registry.getAllChunks())
+        assertEquals(offsetChunks, registry.getOffsetChunks())
+        assertEquals(2, registry.getStringCount())
+        assertEquals(2, registry.getDuplicateStringCount())
+        assertEquals(2L * "Duplicate".length, registry.getDuplicateStringLength())
+      }
+    }
+  }
+
+  @Test
+  fun assignsDenseIndicesToIndexedStrings() {
+    // An entry of the offset table takes two chars and a chunk has an odd length, so one entry spans two chunks.
+    val strings = List(DeobfuscatorHelper.MAX_CHUNK_LENGTH / 2 + 5) { "String #$it" }
+    val registry = StringRegistryImpl(SEED, idFormat = StringIdFormat.INDEXED)
+    val ids = strings.map { registry.registerString(it) }
+    val chunks = registry.getAllChunks().toTypedArray<String?>()
+    val offsets = registry.getOffsetChunks()
+    val pool = StringPool.create(0, SEED, chunks, null, offsets.toTypedArray(), null)
+
+    assertEquals(List(strings.size) { it.toLong() }, ids)
+    assertEquals(ids[1], registry.registerString(strings[1]))
+    assertEquals(listOf(DeobfuscatorHelper.MAX_CHUNK_LENGTH, 9), offsets.map { it.length })
+    strings.forEachIndexed { index, string ->
+      assertEquals(string, pool.getString(ids[index]))
+    }
+  }
+
+  @Test
+  fun encryptsCharsOfCounterPoolByTheirPositions() {
+    val string = STRINGS.maxByOrNull { it.length }!!
+    val registry = StringRegistryImpl(SEED, cipherMode = CipherMode.COUNTER)
+    registry.registerString("Other")
+    val id = registry.registerString(string)
+    val chunks = registry.getAllChunks().toTypedArray<String?>()
+
+    // A char in the second chunk is corrupted. Unlike a chained keystream, which carries the error to every following
+    // char, a counter keystream doesn't depend on other chars, so only the corrupted char is decoded wrong.
+    val corruptedIndex = DeobfuscatorHelper.MAX_CHUNK_LENGTH + 100
+    val chunk = checkNotNull(chunks[1])
+    val charIndex = corruptedIndex - DeobfuscatorHelper.MAX_CHUNK_LENGTH
+    chunks[1] = chunk.substring(0, charIndex) + (chunk[charIndex].code xor 1).toChar() + chunk.substring(charIndex + 1)
+    val pool = StringPool.create(StringPool.FORMAT_COUNTER, SEED, chunks, null, null, null)
+    val decodedString = pool.getString(id)
+
+    assertEquals(string.length, decodedString.length)
+    assertEquals(1, string.indices.count { string[it] != decodedString[it] })
+  }
+
+  @Test
+  fun reportsOnlyRegisteredStrings() {
+    val registry = StringRegistryImpl(SEED, laidOutStrings = listOf("Laid out", "Never registered"))
+    registry.registerString("Other")
+    registry.registerString("Laid out")
+    registry.registerString("Laid out")
+
+    assertEquals(setOf("Laid out", "Other"), registry.getRegisteredStrings().toSet())
+    assertEquals(1, registry.getDuplicateStringCount())
+  }
+
+  private fun assertRoundTrip(
+    encoding: StringEncoding,
+    idFormat: StringIdFormat = StringIdFormat.MASKED,
+    cipherMode: CipherMode = CipherMode.CHAINED
+  ) {
+    val registry = StringRegistryImpl(SEED, encoding, idFormat = idFormat, cipherMode = cipherMode)
+    val ids = STRINGS.map { registry.registerString(it) }
+    val chunks = registry.getAllChunks().toTypedArray<String?>()
+    val offsets = registry.getOffsetChunks().toTypedArray().takeIf { idFormat == StringIdFormat.INDEXED }
+    val pool = StringPool.create(getPoolFormat(encoding, cipherMode), SEED, chunks, null, offsets, null)
+
+    assertEquals(STRINGS.size - 1, registry.getStringCount())
+    assertEquals(1, registry.getDuplicateStringCount())
+    STRINGS.forEachIndexed { index, string ->
+      assertEquals(string, pool.getString(ids[index]))
+    }
+  }
+
+  private fun assertBulkRoundTrip(encoding: StringEncoding, cipherMode: CipherMode = CipherMode.CHAINED) {
+    val registry = StringRegistryImpl(SEED, encoding, cipherMode = cipherMode)
+    registry.registerString("Other")
+    val strings = STRINGS.distinct()
+    val baseId = checkNotNull(registry.registerStrings(strings))
+    val chunks = registry.getAllChunks().toTypedArray<String?>()
+    val pool = StringPool.create(getPoolFormat(encoding, cipherMode), SEED, chunks, null, null, null)
+
+    assertArrayEquals(strings.toTypedArray(), pool.getStrings(baseId, strings.size))
+  }
+
+  private fun getPoolFormat(encoding: StringEncoding, cipherMode: CipherMode): Int {
+    return when (encoding) {
+      StringEncoding.UTF16 -> if (cipherMode == CipherMode.COUNTER) StringPool.FORMAT_COUNTER else 0
+      StringEncoding.SEVEN_BIT -> StringPool.FORMAT_SEVEN_BIT
+      StringEncoding.DEFLATE -> StringPool.FORMAT_DEFLATE
+    }
+  }
+
+  companion object {
+    private const val SEED = 0x5eed1234
+
+    private val STRINGS = listOf(
+      "",
+      "Hello, World!",
+      // Latin-1 chars above 0x7f take several units in a 7-bit pool.
+      "Café ÿ\u0080\u007f\u0000",
+      "Привет, мир",
+      "日本語 \ud83d\ude00 \uffff",
+      // A string that is longer than a chunk spans several of them.
+      (0 until DeobfuscatorHelper.MAX_CHUNK_LENGTH * 2 + 17).map { 'a' + it % 26 }.joinToString(""),
+      (0 until DeobfuscatorHelper.MAX_CHUNK_LENGTH + 3).map { 'Ѐ' + it % 256 }.joinToString(""),
+      "Hello, World!",
+      "The end"
+    )
+  }
+}
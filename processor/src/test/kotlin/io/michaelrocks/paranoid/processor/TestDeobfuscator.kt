@@ -0,0 +1,111 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.mirrors.getObjectType
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import io.michaelrocks.paranoid.StringPool
+import io.michaelrocks.paranoid.processor.model.Deobfuscator
+import io.michaelrocks.paranoid.processor.model.StringIdFormat
+import org.objectweb.asm.Type
+import org.objectweb.asm.commons.Method
+import java.io.Reader
+
+// Works like a deobfuscator generated for a UTF-16 pool with masked ids, so patched classes can be run without
+// generating one.
+object TestDeobfuscator {
+  private var pool = StringPool.create(0, 0, emptyArray(), null, null, null)
+
+  // Strings decoded as a whole, which are expected only when a literal cannot be used in place.
+  @JvmField
+  var decodedStringCount = 0
+
+  fun load(stringRegistry: StringRegistry, seed: Int) {
+    pool = StringPool.create(0, seed, stringRegistry.getAllChunks().toTypedArray(), null, null, null)
+    decodedStringCount = 0
+  }
+
+  @JvmStatic
+  fun getString(id: Long): String {
+    decodedStringCount += 1
+    return pool.getString(id)
+  }
+
+  @JvmStatic
+  fun getStrings(id: Long, count: Int): Array<String> {
+    decodedStringCount += count
+    return pool.getStrings(id, count)
+  }
+
+  @JvmStatic
+  fun stringEquals(id: Long, other: Any?): Boolean {
+    return other is String && pool.equals(id, other)
+  }
+
+  @JvmStatic
+  fun contentEquals(id: Long, other: CharSequence?): Boolean {
+    return pool.equals(id, other)
+  }
+
+  @JvmStatic
+  fun append(builder: StringBuilder, id: Long): StringBuilder {
+    return pool.appendTo(id, builder)
+  }
+
+  @JvmStatic
+  fun getReader(id: Long): Reader {
+    return pool.getReader(id)
+  }
+
+  @JvmStatic
+  fun length(id: Long): Int {
+    return pool.length(id)
+  }
+
+  @JvmStatic
+  fun getChars(id: Long, dest: CharArray, offset: Int): Int {
+    return pool.getChars(id, dest, offset)
+  }
+
+  @JvmStatic
+  fun warmUp() {
+  }
+
+  fun createDeobfuscator(): Deobfuscator {
+    return createDeobfuscator(getObjectType<TestDeobfuscator>().internalName, StringIdFormat.MASKED)
+  }
+}
+
+// Describes a deobfuscator with methods named the way ParanoidProcessor names them.
+fun createDeobfuscator(internalName: String, idFormat: StringIdFormat): Deobfuscator {
+  val stringType = Type.getType(String::class.java)
+  val stringBuilderType = Type.getType(StringBuilder::class.java)
+  val idType = if (idFormat == StringIdFormat.INDEXED) Type.INT_TYPE else Type.LONG_TYPE
+  return Deobfuscator(
+    getObjectTypeByInternalName(internalName),
+    Method("getString", stringType, arrayOf(idType)),
+    Method("getStrings", Type.getType(Array<String>::class.java), arrayOf(Type.LONG_TYPE, Type.INT_TYPE)),
+    idFormat,
+    Method("stringEquals", Type.BOOLEAN_TYPE, arrayOf(idType, Type.getType(Any::class.java))),
+    Method("contentEquals", Type.BOOLEAN_TYPE, arrayOf(idType, Type.getType(CharSequence::class.java))),
+    Method("append", stringBuilderType, arrayOf(stringBuilderType, idType)),
+    Method("getReader", Type.getType(Reader::class.java), arrayOf(idType)),
+    Method("length", Type.INT_TYPE, arrayOf(idType)),
+    Method("getChars", Type.INT_TYPE, arrayOf(idType, Type.getType(CharArray::class.java), Type.INT_TYPE)),
+    Method("warmUp", Type.VOID_TYPE, arrayOf())
+  )
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2021 Michael Rozumyanskiy
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.michaelrocks.paranoid.processor
+
+import com.joom.grip.GripFactory
+import com.joom.grip.mirrors.getObjectType
+import com.joom.grip.mirrors.getObjectTypeByInternalName
+import io.michaelrocks.paranoid.StringCache
+import io.michaelrocks.paranoid.StringPool
+import io.michaelrocks.paranoid.processor.PatchedClassLoader.Companion.ASM_API
+import io.michaelrocks.paranoid.processor.PatchedClassLoader.Companion.patchClass
+import io.michaelrocks.paranoid.processor.fixtures.WarmUpCalls
+import io.michaelrocks.paranoid.processor.model.CipherMode
+import io.michaelrocks.paranoid.processor.model.Deobfuscator
+import io.michaelrocks.paranoid.processor.model.StringCachePolicy
+import io.michaelrocks.paranoid.processor.model.StringEncoding
+import io.michaelrocks.paranoid.processor.model.StringIdFormat
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.Executor
+
+// Registers strings the way Patcher does it for a class that is warmed up and checks which of them end up in the
+// cache of the generated deobfuscator.
+class WarmUpTest {
+  private val grip = GripFactory.newInstance(ASM_API).create(listOf(getClassPath<StringPool>()))
+
+  @Test
+  fun recordsOnlyWarmUpStrings() {
+    val warmUpStrings = HashMap<Long, String>()
+    val registry = WarmUpStringRegistry(StringRegistryImpl(SEED), warmUpStrings, ::isWarmUpString)
+    val ids = STRINGS.associateWith { registry.registerString(it) }
+
+    assertEquals(WARM_UP_STRINGS.associateBy { ids.getValue(it) }, warmUpStrings)
+    assertNull(registry.registerStrings(listOf("New cold string", "Warm new string")))
+    assertNotNull(registry.registerStrings(listOf("New cold string", "Another new cold string")))
+    assertEquals(WARM_UP_STRINGS.size, warmUpStrings.size)
+  }
+
+  @Test
+  fun warmsUpOnlyWarmUpStrings() {
+    assertWarmUp(StringIdFormat.MASKED, StringCachePolicy.Unbounded, WARM_UP_STRINGS)
+  }
+
+  @Test
+  fun warmsUpIndexedStrings() {
+    assertWarmUp(StringIdFormat.INDEXED, StringCachePolicy.Unbounded, WARM_UP_STRINGS)
+  }
+
+  @Test
+  fun warmsUpOnlyStringsThatFitIntoLruCache() {
+    assertWarmUp(StringIdFormat.MASKED, StringCachePolicy.Lru(2), WARM_UP_STRINGS.take(2))
+  }
+
+  @Test
+  fun redirectsWarmUpCallsToGeneratedClass() {
+    val loader = createWarmUpLoader()
+    val cache = loader.loadDeobfuscator().getCache()
+    loader.loadWarmUpCalls().invokeStatic("warmUp")
+    assertCachedStrings(WARM_UP_STRINGS, cache)
+    assertEquals("42", loader.loadWarmUpCalls().invokeStatic("getString"))
+  }
+
+  @Test
+  fun prefetchesStringsWithExecutor() {
+    val loader = createWarmUpLoader()
+    val cache = loader.loadDeobfuscator().getCache()
+    val tasks = ArrayList<Runnable>()
+    loader.loadWarmUpCalls().invokeStatic("prefetch", Executor { tasks += it })
+    assertEquals(1, tasks.size)
+    assertCachedStrings(emptyList(), cache)
+
+    tasks.single().run()
+    assertCachedStrings(WARM_UP_STRINGS, cache)
+  }
+
+  private fun assertWarmUp(idFormat: StringIdFormat, stringCachePolicy: StringCachePolicy, expected: List<String>) {
+    val deobfuscator = createDeobfuscator(DEOBFUSCATOR_NAME, idFormat)
+    val deobfuscatorBytes = generateDeobfuscator(deobfuscator, idFormat, stringCachePolicy)
+    val loader = PatchedClassLoader(mapOf(deobfuscator.type.className to deobfuscatorBytes))
+    val deobfuscatorClass = loader.loadDeobfuscator()
+    val cache = deobfuscatorClass.getCache()
+    assertCachedStrings(emptyList(), cache, idFormat)
+
+    deobfuscatorClass.invokeStatic(deobfuscator.warmUpMethod.name)
+    assertCachedStrings(expected, cache, idFormat)
+  }
+
+  private fun createWarmUpLoader(): PatchedClassLoader {
+    val deobfuscator = createDeobfuscator(DEOBFUSCATOR_NAME, StringIdFormat.MASKED)
+    val deobfuscatorBytes = generateDeobfuscator(deobfuscator, StringIdFormat.MASKED, StringCachePolicy.Unbounded)
+    val warmUpType = getObjectTypeByInternalName(WARM_UP_NAME)
+    val warmUpBytes = WarmUpGenerator(warmUpType, listOf(deobfuscator), grip.classRegistry).generateWarmUp()
+    val warmUpCallsBytes = patchClass(WarmUpCalls::class.java) { WarmUpCallsClassPatcher(warmUpType, ASM_API, it) }
+    return PatchedClassLoader(
+      mapOf(
+        deobfuscator.type.className to deobfuscatorBytes,
+        warmUpType.className to warmUpBytes,
+        getObjectType<WarmUpCalls>().className to warmUpCallsBytes
+      )
+    )
+  }
+
+  private fun generateDeobfuscator(
+    deobfuscator: Deobfuscator,
+    idFormat: StringIdFormat,
+    stringCachePolicy: StringCachePolicy
+  ): ByteArray {
+    val warmUpStrings = LinkedHashMap<Long, String>()
+    val registry = StringRegistryImpl(SEED, idFormat = idFormat)
+    val warmUpRegistry = WarmUpStringRegistry(registry, warmUpStrings, ::isWarmUpString)
+    STRINGS.forEach { warmUpRegistry.registerString(it) }
+    return DeobfuscatorGenerator(
+      deobfuscator,
+      registry,
+      grip.classRegistry,
+      stringCachePolicy,
+      StringEncoding.UTF16,
+      SEED,
+      poolPacking = false,
+      cipherMode = CipherMode.CHAINED,
+      stringCodec = null,
+      warmUpIds = warmUpStrings.keys
+    ).generateDeobfuscator()
+  }
+
+  private fun assertCachedStrings(
+    expected: List<String>,
+    cache: StringCache,
+    idFormat: StringIdFormat = StringIdFormat.MASKED
+  ) {
+    // Strings registered in the same order get the same ids, so the ids are taken from a registry of their own.
+    val registry = StringRegistryImpl(SEED, idFormat = idFormat)
+    val ids = STRINGS.associateWith { registry.registerString(it) }
+    STRINGS.forEach { string ->
+      assertEquals(string, if (string in expected) string else null, cache.get(ids.getValue(string)))
+    }
+  }
+
+  private fun ClassLoader.loadDeobfuscator(): Class<*> {
+    return Class.forName(getObjectTypeByInternalName(DEOBFUSCATOR_NAME).className, true, this)
+  }
+
+  private fun ClassLoader.loadWarmUpCalls(): Class<*> {
+    return Class.forName(WarmUpCalls::class.java.name, true, this)
+  }
+
+  private fun Class<*>.getCache(): StringCache {
+    val pool = getDeclaredField("pool").run {
+      isAccessible = true
+      get(null)
+    }
+    return StringPool::class.java.getDeclaredField("cache").run {
+      isAccessible = true
+      get(pool) as StringCache
+    }
+  }
+
+  private fun isWarmUpString(string: String): Boolean {
+    return string.startsWith("Warm")
+  }
+
+  private inline fun <reified T : Any> getClassPath(): File {
+    return File(T::class.java.protectionDomain.codeSource.location.toURI())
+  }
+
+  companion object {
+    private const val SEED = 0x7761
+    private const val DEOBFUSCATOR_NAME = "io/michaelrocks/paranoid/processor/WarmDeobfuscator"
+    private const val WARM_UP_NAME = "io/michaelrocks/paranoid/processor/GeneratedWarmUp"
+
+    private val WARM_UP_STRINGS = listOf("Warm string", "Warm Привет", "Warm string three")
+    private val STRINGS = listOf("Cold string", WARM_UP_STRINGS[0], "Another cold string") + WARM_UP_STRINGS.drop(1)
+  }
+}